@@ -0,0 +1,2 @@
+SELECT tagid, intvalue, floatvalue, stringvalue, datevalue, t_stamp from sqlt_data_1_%04d_%02d
+where t_stamp >= %d and t_stamp < %d
@@ -0,0 +1,181 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.*;
+
+
+// Alarm extraction without correlated subqueries. Alarm events of a window are read with one range
+// scan of alarm_events, and their properties with one range scan of alarm_event_data over the id range
+// of the events. Properties (name, ackUser, eventValue) are pivoted in memory into alarm columns.
+// Events are selected by event time window, or in id mode in batches of events after the last
+// extracted alarm id.
+
+public class AlarmExtractor {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private static final String EVENTS_SQL = "SELECT id, eventid, source, displaypath, priority, eventtype, eventtime " +
+        "FROM alarm_events WHERE eventtime >= ? AND eventtime < ? ORDER BY id";
+    private static final String EVENTS_COLUMNS = "id, eventid, source, displaypath, priority, eventtype, eventtime";
+    private static final String MYSQL_EVENTS_BY_ID_SQL = "SELECT " + EVENTS_COLUMNS +
+        " FROM alarm_events WHERE id > ? ORDER BY id LIMIT %d";
+    private static final String MSSQL_EVENTS_BY_ID_SQL = "SELECT TOP %d " + EVENTS_COLUMNS +
+        " FROM alarm_events WHERE id > ? ORDER BY id";
+    private static final String START_ID_SQL = "SELECT MAX(id) FROM alarm_events WHERE eventtime < ?";
+    private static final String EVENT_DATA_SQL = "SELECT id, propname, strvalue, floatvalue FROM alarm_event_data " +
+        "WHERE id >= ? AND id <= ? AND propname IN ('name', 'ackUser', 'eventValue')";
+
+    private static final String SOURCE_PREFIX = "prov:default:/tag:";
+    private static final String SOURCE_ALARM = ":/alm:";
+    private static final String ACK_USER = "usr:";
+
+    private SourceConnectionPool pool;
+    private String eventsByIdSql;
+    private int queryTimeout;
+
+    public AlarmExtractor(Config config) {
+        this.pool = SourceConnectionPool.getInstance(config);
+        this.queryTimeout = config.getQueryTimeout();
+        if (config.getIgnitionDBType() == Constants.DB_SOURCE_TYPE_MSSQL) {
+            eventsByIdSql = String.format(MSSQL_EVENTS_BY_ID_SQL, config.getAlarmBatchSize());
+        } else {
+            eventsByIdSql = String.format(MYSQL_EVENTS_BY_ID_SQL, config.getAlarmBatchSize());
+        }
+    }
+
+    // Alarm event with pivoted properties
+    public static class Alarm {
+        long id;
+        Object eventid;
+        String tagpath;
+        Object displaypath;
+        Object priority;
+        Object eventtype;
+        Timestamp eventtime;
+        String name;
+        String ackby;
+        Object value;
+
+        public long getId() {
+            return id;
+        }
+    }
+
+    // Read alarm events with event time in [startMilli, endMilli), ordered by alarm id
+    public List<Alarm> extract(Connection conn, long startMilli, long endMilli) throws SQLException {
+        PreparedStatement stmt = pool.prepareStatement(conn, EVENTS_SQL);
+        stmt.setString(1, SqlTemplate.formatDate(startMilli));
+        stmt.setString(2, SqlTemplate.formatDate(endMilli));
+        return extract(conn, stmt);
+    }
+
+    // Read at most alarmBatchSize alarm events with id greater than lastId, ordered by alarm id
+    public List<Alarm> extractAfterId(Connection conn, long lastId) throws SQLException {
+        PreparedStatement stmt = pool.prepareStatement(conn, eventsByIdSql);
+        stmt.setLong(1, lastId);
+        return extract(conn, stmt);
+    }
+
+    // Largest alarm id with event time before startMilli, or 0 if there is none
+    public long getStartId(Connection conn, long startMilli) throws SQLException {
+        PreparedStatement stmt = pool.prepareStatement(conn, START_ID_SQL);
+        stmt.setString(1, SqlTemplate.formatDate(startMilli));
+        ResultSet rs = stmt.executeQuery();
+        try {
+            if (rs.next()) return rs.getLong(1);
+        } finally {
+            rs.close();
+        }
+        return 0;
+    }
+
+    private List<Alarm> extract(Connection conn, PreparedStatement stmt) throws SQLException {
+        Map<Long, Alarm> alarms = new LinkedHashMap<Long, Alarm>();
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+
+        stmt.setQueryTimeout(queryTimeout);
+        ResultSet rs = stmt.executeQuery();
+        try {
+            while (rs.next()) {
+                Alarm alarm = new Alarm();
+                alarm.id = rs.getLong(1);
+                alarm.eventid = rs.getObject(2);
+                alarm.tagpath = getTagpath(rs.getString(3));
+                alarm.displaypath = rs.getObject(4);
+                alarm.priority = rs.getObject(5);
+                alarm.eventtype = rs.getObject(6);
+                alarm.eventtime = rs.getTimestamp(7);
+                alarms.put(alarm.id, alarm);
+                if (alarm.id < minId) minId = alarm.id;
+                if (alarm.id > maxId) maxId = alarm.id;
+            }
+        } finally {
+            rs.close();
+        }
+
+        if (alarms.size() == 0) {
+            return new ArrayList<Alarm>();
+        }
+
+        stmt = pool.prepareStatement(conn, EVENT_DATA_SQL);
+        stmt.setQueryTimeout(queryTimeout);
+        stmt.setLong(1, minId);
+        stmt.setLong(2, maxId);
+        rs = stmt.executeQuery();
+        try {
+            while (rs.next()) {
+                Alarm alarm = alarms.get(rs.getLong(1));
+                if (alarm == null) continue;
+                String propname = rs.getString(2);
+                if (propname.equals("name")) {
+                    alarm.name = rs.getString(3);
+                } else if (propname.equals("ackUser")) {
+                    alarm.ackby = getAckBy(rs.getString(3));
+                } else if (propname.equals("eventValue")) {
+                    alarm.value = rs.getObject(4);
+                }
+            }
+        } finally {
+            rs.close();
+        }
+
+        logger.fine(String.format("Alarm events extracted: count=%d minId=%d maxId=%d", alarms.size(), minId, maxId));
+        return new ArrayList<Alarm>(alarms.values());
+    }
+
+    // Tag path from alarm source, e.g. prov:default:/tag:Area1/Pump1:/alm:HighTemp -> Area1/Pump1
+    static String getTagpath(String source) {
+        if (source == null) return null;
+        String path = source.replace(SOURCE_PREFIX, "");
+        int idx = path.indexOf(SOURCE_ALARM);
+        if (idx < 0) return "";
+        return path.substring(0, idx);
+    }
+
+    // User name from ackUser property, e.g. usr:admin -> admin
+    static String getAckBy(String ackUser) {
+        if (ackUser == null) return null;
+        int idx = ackUser.indexOf(ACK_USER);
+        if (idx < 0) return ackUser;
+        return ackUser.substring(idx + ACK_USER.length());
+    }
+
+}
@@ -0,0 +1,25 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+
+// Receiver of chunks of extracted rows: upload pipeline, or a window prefetch buffer
+
+public interface ChunkSink {
+
+    // Empty row batch to fill with extracted rows
+    RowBatch newBatch();
+
+    // Return a batch that is not put, for reuse
+    void releaseBatch(RowBatch batch);
+
+    void put(RowBatch batch, UploadPipeline.Tracker tracker) throws InterruptedException;
+
+}
@@ -81,6 +81,44 @@ public class Config {
     private static int extractQueryMode = 0;  // QueryMode is not set in extract SQL. Extract all
                                               // 1 - Discrete/Digital queryMode
                                               // 2 - Analog queryMode
+    private static int dataIntegrity = 0;     // Minimum data integrity (quality) of extracted rows. 0 - not set
+    private static int streamingExtract = 0;  // 1 - read extracted rows using server side cursor in chunks
+    private static int extractChunkSize = 10000;
+    private static int extractFetchSize = 1000;
+    private static int uploadWorkers = 2;
+    private static int uploadQueueSize = 4;
+    private static int backfillThreads = 1;
+    private static int backfillPartitions = 1;
+    private static int adaptiveWindow = 0;
+    private static int tagCatalog = 0;
+    private static int skipAhead = 1;
+    private static int tagShards = 1;
+    private static int queryTimeout = 600;
+    private static int liveTail = 0;
+    private static long liveTailPollInterval = 1000L;
+    private static long liveTailLateness = 10000L;
+    private static int readGovernor = 0;
+    private static long readMaxRowsPerSec = 0L;
+    private static int readMaxQueries = 0;
+    private static JSONArray readProfiles = null;
+    private static int prefetchWindow = 0;
+    private static long prefetchMaxRows = 500000L;
+    private static int partitionPlanner = 0;
+    private static long partitionPlanRefresh = 300L;
+    private static int alarmExtractMode = Constants.ALARM_EXTRACT_TEMPLATE;
+    private static int alarmBatchSize = 10000;
+    private static long tagCatalogRefresh = 60L;
+    private static long adaptiveWindowTargetRows = 100000L;
+    private static long adaptiveWindowMin = 60L;
+    private static long adaptiveWindowMax = 86400L;
+    private static int sourcePoolMaxSize = 4;
+    private static long sourcePoolValidationInterval = 30L;
+    private static int sourcePoolValidationTimeout = 5;
+    private static long sourcePoolMaxLifetime = 1800L;
+    private static long sourcePoolLeakDetectionThreshold = 600L;
+    private static long sourcePoolConnectionTimeout = 60L;
+    private static int sourcePoolStatementCacheSize = 16;
+    private static SqlTemplate sqlTemplate = null;
 
     public Config(JSONObject connConfig, String connectorTypeStr) {
         this.connConfig = connConfig;
@@ -145,6 +183,7 @@ public class Config {
         fetchInterval = connConfig.optLong("fetchInterval", 30L);
         fetchIntervalHistorical = connConfig.optLong("fetchIntervalHistorical", 14400L);
         extractQueryMode = connConfig.optInt("extractQueryMode", 0);
+        dataIntegrity = connConfig.optInt("dataIntegrity", 0);
 
         if (this.connectorType == Constants.CONNECTOR_DEVICE) {
             fetchInterval = setLongValue("deviceFetchInterval", fetchInterval);
@@ -157,6 +196,57 @@ public class Config {
         }
 
         batchInsertSize  = connConfig.optInt("batchInsertSize", 10000);
+        streamingExtract = connConfig.optInt("streamingExtract", 0);
+        extractChunkSize = connConfig.optInt("extractChunkSize", batchInsertSize);
+        extractFetchSize = connConfig.optInt("extractFetchSize", 1000);
+        if (extractChunkSize <= 0) extractChunkSize = batchInsertSize;
+        if (extractFetchSize <= 0) extractFetchSize = 1000;
+        uploadWorkers = connConfig.optInt("uploadWorkers", 2);
+        uploadQueueSize = connConfig.optInt("uploadQueueSize", 4);
+        if (uploadWorkers <= 0) uploadWorkers = 1;
+        if (uploadQueueSize <= 0) uploadQueueSize = 1;
+        backfillThreads = connConfig.optInt("backfillThreads", 1);
+        if (backfillThreads <= 0) backfillThreads = 1;
+        backfillPartitions = connConfig.optInt("backfillPartitions", 1);
+        if (backfillPartitions <= 0) backfillPartitions = 1;
+        tagCatalog = connConfig.optInt("tagCatalog", 0);
+        skipAhead = connConfig.optInt("skipAhead", 1);
+        tagShards = connConfig.optInt("tagShards", 1);
+        queryTimeout = connConfig.optInt("queryTimeout", 600);
+        if (queryTimeout < 0) queryTimeout = 0;
+        if (tagShards <= 0) tagShards = 1;
+        prefetchWindow = connConfig.optInt("prefetchWindow", 0);
+        prefetchMaxRows = connConfig.optLong("prefetchMaxRows", 500000L);
+        partitionPlanner = connConfig.optInt("partitionPlanner", 0);
+        partitionPlanRefresh = connConfig.optLong("partitionPlanRefresh", 300L);
+        alarmExtractMode = connConfig.optInt("alarmExtractMode", Constants.ALARM_EXTRACT_TEMPLATE);
+        alarmBatchSize = connConfig.optInt("alarmBatchSize", 10000);
+        if (alarmBatchSize <= 0) alarmBatchSize = 10000;
+        tagCatalogRefresh = connConfig.optLong("tagCatalogRefresh", 60L);
+        JSONObject liveTailObj = connConfig.optJSONObject("liveTail");
+        if (liveTailObj != null) {
+            liveTail = liveTailObj.optInt("enable", 1);
+            liveTailPollInterval = liveTailObj.optLong("pollInterval", 1000L);
+            liveTailLateness = liveTailObj.optLong("lateness", 10000L);
+            if (liveTailPollInterval < 100) liveTailPollInterval = 100L;
+            if (liveTailLateness < 0) liveTailLateness = 0L;
+        }
+        JSONObject readGovernorObj = connConfig.optJSONObject("readGovernor");
+        if (readGovernorObj != null) {
+            readGovernor = readGovernorObj.optInt("enable", 1);
+            readMaxRowsPerSec = readGovernorObj.optLong("maxRowsPerSec", 0L);
+            readMaxQueries = readGovernorObj.optInt("maxConcurrentQueries", 0);
+            readProfiles = readGovernorObj.optJSONArray("profiles");
+        }
+        JSONObject adaptiveWindowObj = connConfig.optJSONObject("adaptiveWindow");
+        if (adaptiveWindowObj != null) {
+            adaptiveWindow = adaptiveWindowObj.optInt("enable", 1);
+            adaptiveWindowTargetRows = adaptiveWindowObj.optLong("targetRowsPerCycle", 100000L);
+            adaptiveWindowMin = adaptiveWindowObj.optLong("minWindow", 60L);
+            adaptiveWindowMax = adaptiveWindowObj.optLong("maxWindow", 86400L);
+            if (adaptiveWindowTargetRows <= 0) adaptiveWindowTargetRows = 100000L;
+            if (adaptiveWindowMin <= 0) adaptiveWindowMin = 1L;
+        }
 
         if (this.connectorType == Constants.CONNECTOR_DEVICE) {
             httpPort  = connConfig.optInt("httpPort", 5080);
@@ -198,6 +288,7 @@ public class Config {
 
         destDbType = setMonitorDbParams();
         sourceDbType = setIgnitionDbParams();
+        setSourcePoolParams();
 
         csvFile = dataDir + "/volume/data/" + entityType + ".csv";
         updateFile = dataDir + "/volume/config/.upgrade";
@@ -272,10 +363,158 @@ public class Config {
         return extractQueryMode;
     }
 
+    public int getDataIntegrity() {
+        return dataIntegrity;
+    }
+
     public int getBatchInsertSize() {
         return batchInsertSize;
     }
 
+    public int getStreamingExtract() {
+        return streamingExtract;
+    }
+
+    public int getExtractChunkSize() {
+        return extractChunkSize;
+    }
+
+    public int getExtractFetchSize() {
+        return extractFetchSize;
+    }
+
+    public int getUploadWorkers() {
+        return uploadWorkers;
+    }
+
+    public int getUploadQueueSize() {
+        return uploadQueueSize;
+    }
+
+    public int getBackfillThreads() {
+        return backfillThreads;
+    }
+
+    public int getBackfillPartitions() {
+        return backfillPartitions;
+    }
+
+    public int getAlarmExtractMode() {
+        return alarmExtractMode;
+    }
+
+    public int getAlarmBatchSize() {
+        return alarmBatchSize;
+    }
+
+    public int getPartitionPlanner() {
+        return partitionPlanner;
+    }
+
+    public long getPartitionPlanRefresh() {
+        return partitionPlanRefresh;
+    }
+
+    public int getPrefetchWindow() {
+        return prefetchWindow;
+    }
+
+    public long getPrefetchMaxRows() {
+        return prefetchMaxRows;
+    }
+
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    public int getTagShards() {
+        return tagShards;
+    }
+
+    public int getLiveTail() {
+        return liveTail;
+    }
+
+    public long getLiveTailPollInterval() {
+        return liveTailPollInterval;
+    }
+
+    public long getLiveTailLateness() {
+        return liveTailLateness;
+    }
+
+    public int getReadGovernor() {
+        return readGovernor;
+    }
+
+    public long getReadMaxRowsPerSec() {
+        return readMaxRowsPerSec;
+    }
+
+    public int getReadMaxQueries() {
+        return readMaxQueries;
+    }
+
+    public JSONArray getReadProfiles() {
+        return readProfiles;
+    }
+
+    public int getSkipAhead() {
+        return skipAhead;
+    }
+
+    public int getTagCatalog() {
+        return tagCatalog;
+    }
+
+    public long getTagCatalogRefresh() {
+        return tagCatalogRefresh;
+    }
+
+    public int getAdaptiveWindow() {
+        return adaptiveWindow;
+    }
+
+    public long getAdaptiveWindowTargetRows() {
+        return adaptiveWindowTargetRows;
+    }
+
+    public long getAdaptiveWindowMin() {
+        return adaptiveWindowMin;
+    }
+
+    public long getAdaptiveWindowMax() {
+        return adaptiveWindowMax;
+    }
+
+    public int getSourcePoolMaxSize() {
+        return sourcePoolMaxSize;
+    }
+
+    public long getSourcePoolValidationInterval() {
+        return sourcePoolValidationInterval;
+    }
+
+    public int getSourcePoolValidationTimeout() {
+        return sourcePoolValidationTimeout;
+    }
+
+    public long getSourcePoolMaxLifetime() {
+        return sourcePoolMaxLifetime;
+    }
+
+    public long getSourcePoolLeakDetectionThreshold() {
+        return sourcePoolLeakDetectionThreshold;
+    }
+
+    public long getSourcePoolConnectionTimeout() {
+        return sourcePoolConnectionTimeout;
+    }
+
+    public int getSourcePoolStatementCacheSize() {
+        return sourcePoolStatementCacheSize;
+    }
+
     public int getHttpPort() {
         return httpPort;
     }
@@ -376,28 +615,29 @@ public class Config {
         return sourceDbType;
     }
 
-    public String getIgnitionDBSql(long startMilli, long endMilli, int year, int month) {
-        String sqlStr = "";
-        try {
+    // Extraction SQL template of the connector type. With tag catalog, device data is extracted
+    // using join-free template, and tag attributes are resolved from the catalog.
+    public synchronized SqlTemplate getSqlTemplate() {
+        String sqlTemplateFile = dataDir + "/volume/config/deviceSqlTemplate.sql";
+        if (tagCatalog == 1) {
+            sqlTemplateFile = dataDir + "/volume/config/deviceDataSqlTemplate.sql";
+        }
+        if (connectorType == Constants.CONNECTOR_ALARM) {
+            sqlTemplateFile = dataDir + "/volume/config/alarmSqlTemplate.sql";
+        }
+        if (sqlTemplate == null || !sqlTemplate.getTemplateFile().equals(sqlTemplateFile)) {
             if (connectorType == Constants.CONNECTOR_DEVICE) {
-                String sqlTemplateFile = dataDir + "/volume/config/deviceSqlTemplate.sql";
-                String templateSql = new String(Files.readAllBytes(Paths.get(sqlTemplateFile)));
-                sqlStr = String.format(templateSql, year, month, startMilli, endMilli);
+                sqlTemplate = new SqlTemplate(sqlTemplateFile, extractQueryMode, dataIntegrity);
             } else {
-                Date sDate = new Date(startMilli);
-                Date eDate = new Date(endMilli);
-                DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                String sDateStr = df.format(sDate);
-                String eDateStr = df.format(eDate);
-                String sqlTemplateFile = dataDir + "/volume/config/alarmSqlTemplate.sql";
-                String templateSql = new String(Files.readAllBytes(Paths.get(sqlTemplateFile)));
-                sqlStr = String.format(templateSql, sDateStr, eDateStr);
+                sqlTemplate = new SqlTemplate(sqlTemplateFile);
             }
-        } catch(Exception ex) {
-            ex.printStackTrace();
         }
+        return sqlTemplate;
+    }
 
-        return sqlStr; 
+    // Extraction SQL with literal time values
+    public String getIgnitionDBSql(long startMilli, long endMilli, int year, int month) {
+        return getSqlTemplate().render(startMilli, endMilli, year, month);
     }
 
 
@@ -441,6 +681,10 @@ public class Config {
         return parseTagnameObj.getType(tagname);
     }
 
+    public boolean isDiscardedTag(String tagname) {
+        return parseTagnameObj.isDiscarded(tagname);
+    }
+
     public List<String> getTypes() {
         return parseTagnameObj.getTypes();
     }
@@ -458,19 +702,48 @@ public class Config {
         sourceDbPass = ignitionDB.getString("password");
 
         if ( dbType.compareTo("mysql") == 0 ) {
-            if (serverTimezone.equals("")) {
-                sourceDbUrl = "jdbc:mysql://" + sourceHost + "/" + sourceSchema;
-            } else {
-                sourceDbUrl = "jdbc:mysql://" + sourceHost + "/" + sourceSchema + "?serverTimezone=" + serverTimezone;
+            String urlParams = "";
+            if (!serverTimezone.equals("")) {
+                urlParams = "serverTimezone=" + serverTimezone;
             }
+            if (streamingExtract == 1) {
+                // server side cursor, rows are fetched in extractFetchSize blocks
+                if (!urlParams.equals("")) urlParams += "&";
+                urlParams += "useCursorFetch=true";
+            }
+            // extraction statements are prepared once on the server and reused
+            if (!urlParams.equals("")) urlParams += "&";
+            urlParams += "useServerPrepStmts=true";
+            sourceDbUrl = "jdbc:mysql://" + sourceHost + "/" + sourceSchema + "?" + urlParams;
         } else {
             sourceDbUrl = "jdbc:sqlserver://"+sourceHost+":"+sourcePort+";databaseName="+sourceDatabase+";user="+
                     sourceDbUser+";password="+sourceDbPass;
+            if (streamingExtract == 1) {
+                sourceDbUrl += ";responseBuffering=adaptive";
+            }
             type = 2;
         }
         return type;
     }
 
+    // Source connection pool settings, specified in "pool" object of "ignition" configuration object.
+    // Default pool size allows all backfill extraction threads to get a connection.
+    private static void setSourcePoolParams() {
+        int defaultMaxSize = Math.max(4, backfillThreads * backfillPartitions * tagShards + 2);
+        JSONObject pool = ignitionDB.optJSONObject("pool");
+        if (pool == null) {
+            pool = new JSONObject();
+        }
+        sourcePoolMaxSize = pool.optInt("maxSize", defaultMaxSize);
+        sourcePoolValidationInterval = pool.optLong("validationInterval", 30L);
+        sourcePoolValidationTimeout = pool.optInt("validationTimeout", 5);
+        sourcePoolMaxLifetime = pool.optLong("maxLifetime", 1800L);
+        sourcePoolLeakDetectionThreshold = pool.optLong("leakDetectionThreshold", 600L);
+        sourcePoolConnectionTimeout = pool.optLong("connectionTimeout", 60L);
+        sourcePoolStatementCacheSize = pool.optInt("statementCacheSize", 16);
+        if (sourcePoolMaxSize <= 0) sourcePoolMaxSize = defaultMaxSize;
+    }
+
     private static int setMonitorDbParams() {
         int type = 1;
 
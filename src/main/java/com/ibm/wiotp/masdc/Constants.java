@@ -36,6 +36,19 @@ public class Constants {
     public static final int EXTRACT_STATUS_TABLE_NO_DATA = 2;
     public static final int EXTRACT_STATUS_NO_TABLE = 3;
 
+    public static final long EXTRACT_RESULT_NO_TABLE = -1;
+    public static final long EXTRACT_RESULT_FAILED = -2;
+    public static final long EXTRACT_RESULT_DISCARDED = -3;
+    public static final long EXTRACT_RESULT_TIMEOUT = -4;
+
+    public static final int QUERY_MODE_ALL = 0;
+    public static final int QUERY_MODE_DISCRETE = 1;
+    public static final int QUERY_MODE_ANALOG = 2;
+
+    public static final int ALARM_EXTRACT_TEMPLATE = 0;
+    public static final int ALARM_EXTRACT_BULK = 1;
+    public static final int ALARM_EXTRACT_ID = 2;
+
 }
 
 
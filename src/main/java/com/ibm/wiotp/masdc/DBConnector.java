@@ -9,22 +9,25 @@
 
 package com.ibm.wiotp.masdc;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.sql.Types.*;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.ArrayList;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.text.DecimalFormat;
 import org.json.JSONObject;
 import org.json.JSONArray;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import org.apache.commons.jcs3.access.CacheAccess;
 
 
@@ -37,7 +40,6 @@ public class DBConnector {
     private static OffsetRecord offsetRecord = null;
     private static int type;
     private static String DB_URL;
-    private static String[] dbCols;
     private static String entityType;
     private static List<String> entityTypes;
     private static String statsDeviceType;
@@ -45,12 +47,32 @@ public class DBConnector {
     private static int runMode;
     private static String csvFile;
     private static int connectorType;
-    private static String connectorTypeStr;
     private static CacheAccess<String, TagData> tagpaths;
     private static int batchInsertSize = 10000;
+    private static int streamingExtract = 0;
+    private static int extractChunkSize = 10000;
+    private static int extractFetchSize = 1000;
+    private static int backfillThreads = 1;
+    private static int backfillPartitions = 1;
+    private static int skipAhead = 1;
+    private static int tagShards = 1;
+    private static ExecutorService shardPool = null;
+    private static ReadGovernor readGovernor = null;
+    private static LiveTail liveTail = null;
+    private static int queryTimeout = 0;
+    private static int failureCount = 0;
+    private static final long MIN_SPLIT_WINDOW_MILLI = 1000L;
+    private static final long MAX_BACKOFF_MILLI = 60000L;
+    private static final int GOVERNOR_ROWS = 1000;
+    private static WindowController windowController;
+    private static TagCatalog tagCatalog = null;
+    private static TagFilter tagFilter = null;
+    private static TagInternTable tagIntern = null;
+    private static PartitionPlanner partitionPlanner = null;
+    private static AlarmExtractor alarmExtractor = null;
+    private static boolean alarmIdMode = false;
     private static int sourceDBConnState = 0;
     private static int destDBConnState = 0;
-    private static int sourceDBColumnCount = 0;
     private static String clientSite;
     private static int dataPoints;
     private static Device connectorStatDevice;
@@ -71,14 +93,45 @@ public class DBConnector {
         runMode = config.getRunMode();
         csvFile = config.getCSVFile();
         connectorType = config.getConnectorType();
-        connectorTypeStr = config.getConnectorTypeStr();
         batchInsertSize = config.getBatchInsertSize();
+        streamingExtract = config.getStreamingExtract();
+        extractChunkSize = config.getExtractChunkSize();
+        extractFetchSize = config.getExtractFetchSize();
+        backfillThreads = config.getBackfillThreads();
+        backfillPartitions = config.getBackfillPartitions();
+        skipAhead = config.getSkipAhead();
+        tagShards = config.getTagShards();
+        queryTimeout = config.getQueryTimeout();
+        if (config.getLiveTail() == 1 && connectorType == Constants.CONNECTOR_DEVICE) {
+            liveTail = new LiveTail(config, offsetRecord);
+        }
+        if (config.getReadGovernor() == 1) {
+            readGovernor = new ReadGovernor(config);
+        }
+        windowController = new WindowController(config);
+        if (connectorType == Constants.CONNECTOR_DEVICE) {
+            tagFilter = new TagFilter(config);
+            tagIntern = new TagInternTable();
+            if (config.getTagCatalog() == 1) {
+                tagCatalog = new TagCatalog(config, tagFilter);
+            }
+            if (config.getPartitionPlanner() == 1) {
+                if (config.getSqlTemplate().hasPartitionTable()) {
+                    partitionPlanner = new PartitionPlanner(config);
+                } else {
+                    logger.warning("Partition planner is disabled: SQL template has no partition table " + config.getSqlTemplate().getTemplateFile());
+                }
+            }
+        }
+        if (config.getAlarmExtractMode() != Constants.ALARM_EXTRACT_TEMPLATE && connectorType == Constants.CONNECTOR_ALARM) {
+            alarmExtractor = new AlarmExtractor(config);
+            alarmIdMode = (config.getAlarmExtractMode() == Constants.ALARM_EXTRACT_ID);
+        }
         statsDeviceType = config.getStatsDeviceType();
         statsDeviceId = config.getStatsDeviceId();
         dataPoints = config.getDataPoints();
 
         this.dbHelper = new DBHelper(config);
-        dbCols = dbHelper.getMonitorDBCols();
         DB_URL = config.getIgnitionDBUrl();
 
         connectorStatDevice = new Device(config, tagpaths);
@@ -88,20 +141,28 @@ public class DBConnector {
     // Extract and Upload data to data lake
     public static void extractAndUpload() throws Exception {
 
-        FileWriter fw = null;
-        Connection conn = null;
-        Statement stmt = null;
         int noUpload = 1;
-        ExecutorService uploadWorkerPool = Executors.newCachedThreadPool();;
+        UploadPipeline pipeline = new UploadPipeline(config, offsetRecord);
+        ExecutorService backfillPool = null;
+        WindowPrefetcher prefetcher = null;
 
         try {
+            pipeline.start();
+            if (backfillThreads > 1) {
+                backfillPool = Executors.newFixedThreadPool(backfillThreads);
+            } else if (config.getPrefetchWindow() == 1) {
+                prefetcher = new WindowPrefetcher(config, offsetRecord);
+            }
+            if (tagShards > 1 && connectorType == Constants.CONNECTOR_DEVICE) {
+                shardPool = Executors.newFixedThreadPool(tagShards);
+            }
+
             logger.info("Connecting to source to extract data for " + entityType);
 
             // retrieve records
             long cycleStartTimeMillis = 0;
             long cycleEndTimeMillis = 0;
             long cycleTime = 0;
-            List<String> sourceDBColumnNames = new ArrayList<String>();
 
             while ( true ) {
 
@@ -122,8 +183,79 @@ public class DBConnector {
                     break;
                 }
 
+                // Read partition catalog at startup and then every refresh interval
+                if (partitionPlanner != null) {
+                    partitionPlanner.refreshIfDue(offsetRecord);
+                    partitionPlanner.updateBacklog(offsetRecord);
+                }
+
+                // Offset is in an older month partition, backfill partitions in parallel
+                if (backfillPartitions > 1 && connectorType == Constants.CONNECTOR_DEVICE && PartitionBackfill.isNeeded(offsetRecord)) {
+                    if (prefetcher != null) prefetcher.discard();
+                    PartitionBackfill backfill = new PartitionBackfill(config, offsetRecord, pipeline, partitionPlanner);
+                    if (!backfill.run()) {
+                        resetDBConnection(null, null, null);
+                    } else {
+                        failureCount = 0;
+                    }
+                    continue;
+                }
+
                 cycleStartTimeMillis = System.currentTimeMillis();
 
+                // Alarm id mode: extract batches of alarms after the last extracted alarm id
+                if (alarmIdMode) {
+                    long rowCount = extractAlarmsById(pipeline);
+                    if (rowCount == Constants.EXTRACT_RESULT_FAILED) {
+                        resetDBConnection(null, null, null);
+                        continue;
+                    }
+                    failureCount = 0;
+                    if (rowCount > 0) {
+                        offsetRecord.setRate(rowCount * 1000 / Math.max(1, System.currentTimeMillis() - cycleStartTimeMillis));
+                        logger.info(String.format("Alarms extracted: rows=%d lastAlarmId=%d", rowCount, offsetRecord.getLastAlarmId()));
+                    }
+                    if (runMode == Constants.TEST) {
+                        break;
+                    }
+                    // wait for new alarms once caught up
+                    if (rowCount < config.getAlarmBatchSize()) {
+                        try {
+                            Thread.sleep(offsetRecord.getWaitTimeMilli(1, cycleStartTimeMillis));
+                        } catch (Exception e) {}
+                    }
+                    continue;
+                }
+
+                // Offset is within one fetch interval of the current time, poll from the live tail watermark
+                if (liveTail != null && liveTail.isActive(cycleStartTimeMillis)) {
+                    if (prefetcher != null) prefetcher.discard();
+                    long rowCount = liveTail.poll(pipeline, cycleStartTimeMillis);
+                    if (rowCount == Constants.EXTRACT_RESULT_FAILED) {
+                        liveTail.rollback();
+                        resetDBConnection(null, null, null);
+                        continue;
+                    }
+                    failureCount = 0;
+                    if (rowCount > 0) {
+                        pipeline.waitForUploads();
+                        offsetRecord.setRate(rowCount * 1000 / Math.max(1, System.currentTimeMillis() - cycleStartTimeMillis));
+                        logger.fine(String.format("Live tail: extracted=%d currEntityCount=%d", rowCount, offsetRecord.getEntityCount()));
+                    }
+                    liveTail.commit();
+                    if (runMode == Constants.TEST) {
+                        break;
+                    }
+                    // poll again right away if the poll was limited before the current time
+                    long waitTime = liveTail.getPollIntervalMilli() - (System.currentTimeMillis() - cycleStartTimeMillis);
+                    if (waitTime > 0 && liveTail.isCaughtUp(cycleStartTimeMillis)) {
+                        try {
+                            Thread.sleep(waitTime);
+                        } catch (Exception e) {}
+                    }
+                    continue;
+                }
+
                 long startTimeSecs = offsetRecord.getStartTimeSecs();
                 long startTimeMilli = startTimeSecs * 1000;
                 long endTimeSecs = offsetRecord.getEndTimeSecs();
@@ -134,72 +266,61 @@ public class DBConnector {
                 logger.info(String.format("StartTime:%d EndTime:%d Year:%d Month:%d currTime:%d", 
                     startTimeSecs, endTimeSecs, year, month, (cycleStartTimeMillis/1000)));
 
-                String querySql = config.getIgnitionDBSql(startTimeMilli, endTimeMilli, year, month);
-                if (runMode != Constants.PRODUCTION) {
-                    logger.info("Extract SQL: " + querySql);
+                // No partition has data in this window, jump to the start of the next partition
+                if (partitionPlanner != null && partitionPlanner.hasPlan() && partitionPlanner.getPartitions(startTimeMilli, endTimeMilli).isEmpty()) {
+                    long nextDataMilli = partitionPlanner.getNextDataMilli(startTimeMilli);
+                    if (nextDataMilli > startTimeMilli && nextDataMilli < cycleStartTimeMillis) {
+                        logger.info(String.format("No partition in window. Skip to the next partition: startTime=%d", nextDataMilli/1000));
+                        offsetRecord.setOffsetTime(nextDataMilli/1000, Constants.EXTRACT_STATUS_TABLE_NO_DATA);
+                        continue;
+                    }
                 }
 
-                conn = getSourceConnection(type);
-                stmt = conn.createStatement();
-
-                ResultSet rs = null;
-                int gotData = 1;
-                try {
-                    rs = stmt.executeQuery(querySql);
-                } catch (Exception qex) {
-                    gotData = 0;
-                    if (qex instanceof SQLException) {
-                        int errCode = ((SQLException)qex).getErrorCode();
-                        if (errCode == 1146) {
-                            // mySQL - table doesn't exist. Set offset file to move to next month table
-                            offsetRecord.updateOffsetFile(startTimeSecs, endTimeSecs, year, month, Constants.EXTRACT_STATUS_NO_TABLE);
-                        } else {
-                            logger.info("Extract: SQLException: " + qex.getMessage());
-                        }
+                // Use prefetched window only if offset moved to the predicted window
+                long rowCount = Constants.EXTRACT_RESULT_DISCARDED;
+                if (prefetcher != null && prefetcher.matches(startTimeSecs, endTimeSecs, year, month)) {
+                    rowCount = prefetcher.take(pipeline);
+                } else if (prefetcher != null) {
+                    prefetcher.discard();
+                }
+                if (rowCount == Constants.EXTRACT_RESULT_DISCARDED) {
+                    if (backfillPool != null && offsetRecord.isHistoricalWindow()) {
+                        rowCount = extractSubWindows(backfillPool, pipeline, startTimeSecs, endTimeSecs, year, month);
                     } else {
-                        logger.info("Extract: Exception: " + qex.getMessage());
+                        rowCount = extractWindow(pipeline, startTimeMilli, endTimeMilli, year, month);
                     }
                 }
 
-                if (gotData == 0) {
-                    resetDBConnection(stmt, rs, conn);
+                if (rowCount == Constants.EXTRACT_RESULT_NO_TABLE) {
+                    // mySQL - table doesn't exist. Set offset file to move to next month table
+                    offsetRecord.updateOffsetFile(startTimeSecs, endTimeSecs, year, month, Constants.EXTRACT_STATUS_NO_TABLE);
+                    failureCount = 0;
+                    resetDBConnection(null, null, null);
+                    continue;
+                }
+                if (rowCount == Constants.EXTRACT_RESULT_FAILED) {
+                    resetDBConnection(null, null, null);
                     continue;
                 }
 
-                // Get column count and column type of TS column and cache it
-                try {
-                    sourceDBColumnCount = sourceDBColumnNames.size();
-                    if (sourceDBColumnCount == 0) {
-                        sourceDBColumnNames = new ArrayList<String>();
-                        final ResultSetMetaData rsmd = rs.getMetaData();
-                        sourceDBColumnCount = rsmd.getColumnCount();
-                        for (int i = 1; i <= sourceDBColumnCount; i++) {
-                            String colName = rsmd.getColumnName(i);
-                            sourceDBColumnNames.add(colName);
-                        }
+                failureCount = 0;
+
+                // Size the next historical window from the row density of this window
+                if (windowController.isEnabled() && offsetRecord.isHistoricalWindow()) {
+                    offsetRecord.setHistoricalWindowSecs(windowController.getNextWindowSecs(endTimeSecs - startTimeSecs, rowCount));
+                }
+
+                long currentTotalCount = offsetRecord.getProcessedCount();
+                if (rowCount == 0 && skipAhead == 1 && connectorType == Constants.CONNECTOR_DEVICE && offsetRecord.isHistoricalWindow()) {
+                    // Gap in history: move offset directly to the next time with data
+                    long nextDataSecs = getNextDataSecs(endTimeMilli, year, month, cycleStartTimeMillis);
+                    if (nextDataSecs > endTimeSecs) {
+                        logger.info(String.format("No Data extracted. Skip ahead to the next data: startTime=%d", nextDataSecs));
+                        offsetRecord.setOffsetTime(nextDataSecs, Constants.EXTRACT_STATUS_TABLE_NO_DATA);
+                        continue;
                     }
-                } catch(Exception e) {
-                    resetDBConnection(stmt, rs, conn);
-                    continue;
                 }
-   
-                // Prepare extracted data for upload: create hash map of extracted data 
-                long rowCount = 0;
-                long currentTotalCount = 0;
-                Map<String, List<Object>> sourceMap = new HashMap<String, List<Object>>();
-                try {
-                    rowCount = getSourceMap(sourceDBColumnNames, rs, sourceMap);
-                    currentTotalCount = offsetRecord.setProcessedCount(rowCount);
-                } catch(Exception e) {
-                    logger.log(Level.FINE, e.getMessage(), e);
-                } 
-  
-                if (rs != null) rs.close();
-                if (stmt != null) stmt.close();
-                if (conn != null) conn.close();
- 
                 if (rowCount == 0) {
-                    if (sourceMap != null) sourceMap.clear();
                     int waitFlag = offsetRecord.updateOffsetFile(startTimeSecs, endTimeSecs, year, month, Constants.EXTRACT_STATUS_TABLE_NO_DATA);
                     long waitTime = offsetRecord.getWaitTimeMilli(waitFlag, cycleStartTimeMillis);
                     logger.info(String.format("No Data extracted: currCount=%d waitTimeMilli=%d entities=%d\n", 
@@ -210,23 +331,19 @@ public class DBConnector {
                     continue;
                 }
     
-                logger.info(String.format("Data extracted: cols=%d rows=%d currCount=%d entities=%d\n", 
-                    sourceDBColumnCount, rowCount, currentTotalCount, offsetRecord.getEntityCount()));
-
-
-                // Upload data
-                int nuploaded = 0;
-                if (rowCount > 0) {
-                    ListIterator<String> itr = null;
-                    itr = entityTypes.listIterator();
-                    while (itr.hasNext()) {
-                        String eType = itr.next();
-                        nuploaded = batchInsert(sourceMap, rowCount, eType);
-                        offsetRecord.setUploadedCount(nuploaded);
+                logger.info(String.format("Data extracted: rows=%d currCount=%d entities=%d\n", 
+                    rowCount, currentTotalCount, offsetRecord.getEntityCount()));
+
+                // Read the next historical window while this window is uploaded
+                if (prefetcher != null && offsetRecord.isHistoricalWindow()) {
+                    long[] nextWindow = offsetRecord.predictNextWindow(endTimeSecs);
+                    if (nextWindow != null) {
+                        prefetcher.start(nextWindow[0], nextWindow[1], (int) nextWindow[2], (int) nextWindow[3]);
                     }
                 }
 
-                sourceMap.clear();
+                // Offset is moved only after all chunks of the window are uploaded
+                pipeline.waitForUploads();
 
                 int waitFlag = offsetRecord.updateOffsetFile(startTimeSecs, endTimeSecs, year, month, Constants.EXTRACT_STATUS_TABLE_WITH_DATA);
                 long waitTime = offsetRecord.getWaitTimeMilli(waitFlag, cycleStartTimeMillis);
@@ -252,53 +369,588 @@ public class DBConnector {
 					
         } catch (Exception ex) {
             throw ex;
+        } finally {
+            if (backfillPool != null) backfillPool.shutdownNow();
+            if (prefetcher != null) prefetcher.shutdown();
+            if (shardPool != null) {
+                shardPool.shutdownNow();
+                shardPool = null;
+            }
+            pipeline.shutdown();
         }
     }
 
-    public static int batchInsert(Map<String, List<Object>> sourceMap, long totalRows, String eType) {
-        int rowsProcessed = 0;
-        int batchCount = 0;
+    // Split historical window in backfillThreads sub windows and extract them at the same time
+    // over separate source connections. If a sub window fails, offset is moved to the start of
+    // the first failed sub window, once every sub window below it is extracted and uploaded.
+    private static long extractSubWindows(ExecutorService backfillPool, UploadPipeline pipeline,
+            long startTimeSecs, long endTimeSecs, int year, int month) throws Exception {
+
+        long windowSecs = endTimeSecs - startTimeSecs;
+        long subWindowSecs = (windowSecs + backfillThreads - 1) / backfillThreads;
+        if (subWindowSecs <= 0) subWindowSecs = 1;
+
+        List<Long> subStartSecs = new ArrayList<Long>();
+        List<Future<Long>> results = new ArrayList<Future<Long>>();
+        for (long subStart = startTimeSecs; subStart < endTimeSecs; subStart += subWindowSecs) {
+            long subEnd = Math.min(subStart + subWindowSecs, endTimeSecs);
+            subStartSecs.add(subStart);
+            results.add(backfillPool.submit(new SubWindowExtractor(pipeline, subStart * 1000, subEnd * 1000, year, month)));
+        }
+        logger.info(String.format("Backfill: window=%d subWindows=%d subWindowSecs=%d", windowSecs, results.size(), subWindowSecs));
+
+        long rowCount = 0;
+        int failedIndex = -1;
+        int noTable = 0;
+        for (int i = 0; i < results.size(); i++) {
+            long subRows = Constants.EXTRACT_RESULT_FAILED;
+            try {
+                subRows = results.get(i).get();
+            } catch (ExecutionException e) {
+                logger.log(Level.INFO, e.getMessage(), e);
+            }
+            if (subRows == Constants.EXTRACT_RESULT_NO_TABLE) {
+                noTable = 1;
+            } else if (subRows < 0) {
+                if (failedIndex < 0) failedIndex = i;
+            } else {
+                rowCount += subRows;
+            }
+        }
+
+        if (noTable == 1) return Constants.EXTRACT_RESULT_NO_TABLE;
+
+        if (failedIndex >= 0) {
+            long completedEndSecs = subStartSecs.get(failedIndex);
+            logger.info(String.format("Backfill: sub window failed. Completed up to:%d", completedEndSecs));
+            if (completedEndSecs > startTimeSecs) {
+                pipeline.waitForUploads();
+                offsetRecord.updateOffsetFile(startTimeSecs, completedEndSecs, year, month, Constants.EXTRACT_STATUS_TABLE_WITH_DATA);
+            }
+            return Constants.EXTRACT_RESULT_FAILED;
+        }
+
+        return rowCount;
+    }
+
+    // Time (in seconds) of the first row at or after timeMilli, probed with MIN(t_stamp) on the partition
+    // table of the year and month, or on partition tables of the partition plan. If the partition table of
+    // a past month has no more data, start of the next month is returned. Returns -1 if it is not known.
+    private static long getNextDataSecs(long timeMilli, int year, int month, long curTimeMilli) {
+        List<String> tableNames = new ArrayList<String>();
+        List<Long> tableStarts = new ArrayList<Long>();
+        long nextMonthMilli = -1;
+        if (partitionPlanner != null && partitionPlanner.hasPlan()) {
+            for (PartitionPlanner.Partition p : partitionPlanner.getPartitions(timeMilli, curTimeMilli)) {
+                tableNames.add(p.getTableName());
+                tableStarts.add(p.getStartMilli());
+            }
+        } else {
+            String tableName = config.getSqlTemplate().getTableName(year, month);
+            if (tableName == null) return -1;
+            tableNames.add(tableName);
+            tableStarts.add(0L);
+            DateUtil du = new DateUtil(String.format("%04d-%02d-01 00:00:00", (month == 12) ? year + 1 : year, (month == 12) ? 1 : month + 1));
+            if (du.getTimeMilli() < curTimeMilli) nextMonthMilli = du.getTimeMilli();
+        }
+        if (tableNames.isEmpty()) return -1;
+
+        long nextMilli = -1;
+        Connection conn = getSourceConnection(type);
+        boolean brokenConn = false;
+        try {
+            for (int i = 0; i < tableNames.size(); i++) {
+                // partitions are ordered by start time
+                if (nextMilli != -1 && tableStarts.get(i) >= nextMilli) break;
+                String probeSql = String.format("SELECT MIN(t_stamp) FROM %s WHERE t_stamp >= ?", tableNames.get(i));
+                PreparedStatement stmt = SourceConnectionPool.getInstance(config).prepareStatement(conn, probeSql);
+                stmt.setLong(1, timeMilli);
+                ResultSet rs = stmt.executeQuery();
+                try {
+                    if (rs.next()) {
+                        long tstamp = rs.getLong(1);
+                        if (!rs.wasNull() && (nextMilli == -1 || tstamp < nextMilli)) nextMilli = tstamp;
+                    }
+                } finally {
+                    rs.close();
+                }
+            }
+        } catch (SQLException e) {
+            logger.info("Skip ahead probe failed: " + e.getMessage());
+            brokenConn = (e.getErrorCode() != 1146);
+            return -1;
+        } finally {
+            releaseSourceConnection(conn, brokenConn);
+        }
+
+        if (nextMilli == -1) nextMilli = nextMonthMilli;
+        if (nextMilli == -1) return -1;
+        return nextMilli / 1000;
+    }
+
+    // Extract a window. With partition plan, the window is extracted from partition tables of all drivers
+    // that overlap it, otherwise from the partition table of the year and month.
+    static long extractWindow(ChunkSink pipeline, long startMilli, long endMilli, int year, int month) throws Exception {
+        if (partitionPlanner == null || !partitionPlanner.hasPlan()) {
+            return extractTable(pipeline, null, startMilli, endMilli, year, month, null);
+        }
+        List<PartitionPlanner.Partition> partitions = partitionPlanner.getPartitions(startMilli, endMilli);
+        if (partitions.isEmpty()) {
+            return extractTable(pipeline, null, startMilli, endMilli, year, month, null);
+        }
+
+        long rowCount = 0;
+        for (PartitionPlanner.Partition p : partitions) {
+            long rows = extractTable(pipeline, null, startMilli, endMilli, year, month, p.getTableName());
+            if (rows == Constants.EXTRACT_RESULT_NO_TABLE) {
+                // partition table is dropped, refresh plan in next cycle
+                logger.info("Partition table is not found: " + p.getTableName());
+                partitionPlanner.invalidate();
+                continue;
+            }
+            if (rows == Constants.EXTRACT_RESULT_FAILED) {
+                return rows;
+            }
+            rowCount += rows;
+        }
+        return rowCount;
+    }
+
+    // Extract a window from one partition table. If the query times out before any rows are queued, the window
+    // is split in two halves which are extracted one after the other, down to MIN_SPLIT_WINDOW_MILLI.
+    static long extractTable(ChunkSink pipeline, UploadPipeline.Tracker tracker, long startMilli, long endMilli,
+            int year, int month, String tableName) throws Exception {
+        long rowCount = extractShards(pipeline, tracker, startMilli, endMilli, year, month, tableName);
+        if (rowCount != Constants.EXTRACT_RESULT_TIMEOUT) {
+            return rowCount;
+        }
+        if (endMilli - startMilli < 2 * MIN_SPLIT_WINDOW_MILLI) {
+            logger.info(String.format("Query timeout. Window can not be split: start=%d end=%d", startMilli, endMilli));
+            return Constants.EXTRACT_RESULT_FAILED;
+        }
+
+        long midMilli = startMilli + (endMilli - startMilli) / 2;
+        logger.info(String.format("Query timeout. Split window: start=%d mid=%d end=%d", startMilli, midMilli, endMilli));
+        long firstRows = extractTable(pipeline, tracker, startMilli, midMilli, year, month, tableName);
+        if (firstRows < 0) return firstRows;
+        long secondRows = extractTable(pipeline, tracker, midMilli, endMilli, year, month, tableName);
+        if (secondRows < 0) return secondRows;
+        return firstRows + secondRows;
+    }
+
+    // Extract a window from one partition table. With tagShards, the window is split in tag id ranges,
+    // extracted at the same time over separate source connections.
+    private static long extractShards(ChunkSink pipeline, UploadPipeline.Tracker tracker, long startMilli, long endMilli,
+            int year, int month, String tableName) throws Exception {
+        long[] tagIdRange = null;
+        if (shardPool != null) {
+            tagIdRange = getTagIdRange();
+        }
+        if (tagIdRange == null) {
+            return extractRange(pipeline, tracker, startMilli, endMilli, year, month, tableName, -1, -1);
+        }
+
+        long shardSize = (tagIdRange[1] - tagIdRange[0] + tagShards) / tagShards;
+        if (shardSize <= 0) shardSize = 1;
+        List<Future<Long>> results = new ArrayList<Future<Long>>();
+        for (long fromTagId = tagIdRange[0]; fromTagId <= tagIdRange[1]; fromTagId += shardSize) {
+            long toTagId = fromTagId + shardSize;
+            // last shard includes tags added after the tag id range is read
+            if (toTagId > tagIdRange[1]) toTagId = Long.MAX_VALUE;
+            results.add(shardPool.submit(new SubWindowExtractor(pipeline, tracker, startMilli, endMilli, year, month, tableName, fromTagId, toTagId)));
+        }
+
+        long rowCount = 0;
+        long failed = 0;
+        for (Future<Long> result : results) {
+            long shardRows = Constants.EXTRACT_RESULT_FAILED;
+            try {
+                shardRows = result.get();
+            } catch (ExecutionException e) {
+                logger.log(Level.INFO, e.getMessage(), e);
+            }
+            if (shardRows < 0) {
+                // any failure other than a timeout is not retried by splitting the window
+                if (failed != Constants.EXTRACT_RESULT_FAILED) failed = shardRows;
+            } else {
+                rowCount += shardRows;
+            }
+        }
+        if (failed == Constants.EXTRACT_RESULT_TIMEOUT && rowCount > 0) {
+            // rows of other shards are queued, splitting the window would queue them again
+            logger.info(String.format("Query timeout of a tag shard after %d rows were queued. Window is not split.", rowCount));
+            return Constants.EXTRACT_RESULT_FAILED;
+        }
+        if (failed < 0) return failed;
+        return rowCount;
+    }
+
+    // Smallest and largest tag id in sqlth_te, or null if it is not known
+    private static long[] getTagIdRange() {
+        Connection conn = getSourceConnection(type);
+        boolean brokenConn = false;
+        try {
+            PreparedStatement stmt = SourceConnectionPool.getInstance(config).prepareStatement(conn, "SELECT MIN(id), MAX(id) FROM sqlth_te");
+            ResultSet rs = stmt.executeQuery();
+            try {
+                if (rs.next() && rs.getObject(1) != null) {
+                    return new long[] {rs.getLong(1), rs.getLong(2)};
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            logger.info("Failed to read tag id range: " + e.getMessage());
+            brokenConn = true;
+        } finally {
+            releaseSourceConnection(conn, brokenConn);
+        }
+        return null;
+    }
+
+    // Extract rows with t_stamp in [startMilli, endMilli) and add them to the upload pipeline in chunks,
+    // counted against tracker (pipeline default tracker if null). Rows are extracted from tableName if specified,
+    // otherwise from the template partition table of the year and month. Only rows with tag id in
+    // [fromTagId, toTagId) are extracted, if fromTagId is not -1.
+    // Returns number of extracted rows, EXTRACT_RESULT_NO_TABLE if the partition table doesn't exist,
+    // EXTRACT_RESULT_TIMEOUT if the query timed out before any rows were queued, or EXTRACT_RESULT_FAILED
+    // if the query failed.
+    static long extractRange(ChunkSink pipeline, UploadPipeline.Tracker tracker, long startMilli, long endMilli,
+            int year, int month, String tableName, long fromTagId, long toTagId) throws Exception {
+
+        if (alarmExtractor != null) {
+            if (readGovernor == null) {
+                return extractAlarms(pipeline, tracker, startMilli, endMilli);
+            }
+            readGovernor.acquireQuery();
+            try {
+                return extractAlarms(pipeline, tracker, startMilli, endMilli);
+            } finally {
+                readGovernor.releaseQuery();
+            }
+        }
+
+        if (tagCatalog != null) {
+            tagCatalog.refreshIfDue();
+        }
+
+        SqlTemplate sqlTemplate = config.getSqlTemplate();
+        String querySql;
+        boolean tagRange = (fromTagId != -1);
+        if (tableName != null) {
+            try {
+                querySql = sqlTemplate.getExtractSql(tableName, tagRange);
+            } catch (IllegalStateException e) {
+                // template is changed to a template without partition table, partition tables can not be extracted
+                logger.severe("Extract: " + e.getMessage());
+                return Constants.EXTRACT_RESULT_FAILED;
+            }
+        } else {
+            querySql = sqlTemplate.getExtractSql(year, month, tagRange);
+        }
+        if (runMode != Constants.PRODUCTION) {
+            logger.info(String.format("Extract SQL: %s [start=%d end=%d]", querySql, startMilli, endMilli));
+        }
+
+        if (readGovernor != null) {
+            readGovernor.acquireQuery();
+        }
+        Connection conn = getSourceConnection(type);
+        ResultSet rs = null;
+        long rowCount = 0;
+        boolean brokenConn = false;
+        QueryWatchdog.Watch watch = null;
+
+        try {
+            try {
+                // prepared statement is cached with the pooled connection, and is not closed here
+                PreparedStatement stmt = SourceConnectionPool.getInstance(config).prepareStatement(conn, querySql);
+                if (streamingExtract == 1) {
+                    stmt.setFetchSize(extractFetchSize);
+                }
+                stmt.setQueryTimeout(queryTimeout);
+                watch = QueryWatchdog.watch(stmt, queryTimeout);
+                sqlTemplate.bindExtractParams(stmt, startMilli, endMilli);
+                if (fromTagId != -1) {
+                    sqlTemplate.bindTagRange(stmt, fromTagId, toTagId);
+                }
+                rs = stmt.executeQuery();
+            } catch (Exception qex) {
+                if (isTimeout(qex, watch)) {
+                    brokenConn = true;
+                    return Constants.EXTRACT_RESULT_TIMEOUT;
+                }
+                if (qex instanceof SQLException) {
+                    int errCode = ((SQLException)qex).getErrorCode();
+                    if (errCode == 1146) {
+                        return Constants.EXTRACT_RESULT_NO_TABLE;
+                    }
+                    logger.info("Extract: SQLException: " + qex.getMessage());
+                } else {
+                    logger.info("Extract: Exception: " + qex.getMessage());
+                }
+                brokenConn = true;
+                return Constants.EXTRACT_RESULT_FAILED;
+            }
+
+            // Column handlers of the result set
+            ResultSetDecoder decoder = null;
+            try {
+                decoder = new ResultSetDecoder(rs.getMetaData(), connectorType);
+            } catch(Exception e) {
+                brokenConn = true;
+                return Constants.EXTRACT_RESULT_FAILED;
+            }
+   
+            // Prepare extracted data for upload: read rows into row batches.
+            // In streaming mode rows are read and uploaded in chunks of extractChunkSize rows,
+            // otherwise complete window is read in a single chunk.
+            int maxChunkRows = Integer.MAX_VALUE;
+            if (streamingExtract == 1) {
+                maxChunkRows = extractChunkSize;
+            }
+            int chunkRows = 0;
+            try {
+                do {
+                    // batch is owned by the upload pipeline once it is queued
+                    RowBatch batch = pipeline.newBatch();
+                    chunkRows = getRowBatch(decoder, rs, batch, maxChunkRows, watch);
+                    if (chunkRows > 0) {
+                        rowCount += chunkRows;
+                        offsetRecord.setProcessedCount(chunkRows);
+                        // upload pipeline wait is not counted in the query timeout
+                        if (watch != null) watch.pause();
+                        pipeline.put(batch, tracker);
+                        if (watch != null) watch.resume();
+                    } else {
+                        pipeline.releaseBatch(batch);
+                    }
+                } while (chunkRows == maxChunkRows);
+            } catch(InterruptedException e) {
+                throw e;
+            } catch(TagCatalog.UnknownTagException e) {
+                // window is extracted again once the tag is in the catalog, connection is not broken
+                logger.info("Extract: " + e.getMessage());
+                return Constants.EXTRACT_RESULT_FAILED;
+            } catch(Exception e) {
+                // window is extracted again, rows of the window queued so far are uploaded twice
+                brokenConn = true;
+                if (isTimeout(e, watch)) {
+                    if (rowCount == 0) return Constants.EXTRACT_RESULT_TIMEOUT;
+                    // splitting the window would queue the rows again
+                    logger.info(String.format("Query timeout after %d rows were queued. Window is not split.", rowCount));
+                    return Constants.EXTRACT_RESULT_FAILED;
+                }
+                logger.info("Extract: Exception while reading rows: " + e.getMessage());
+                logger.log(Level.FINE, e.getMessage(), e);
+                return Constants.EXTRACT_RESULT_FAILED;
+            } 
+        } finally {
+            if (watch != null) watch.close();
+            closeSourceResources(null, rs, conn, brokenConn);
+            if (readGovernor != null) {
+                readGovernor.releaseQuery();
+            }
+        }
+
+        return rowCount;
+    }
+
+    // Query was cancelled by the watchdog, or timed out in the driver
+    private static boolean isTimeout(Exception e, QueryWatchdog.Watch watch) {
+        if (watch != null && watch.isCancelled()) {
+            return true;
+        }
+        // HYT00: SQL state of a timeout, for drivers without SQLTimeoutException
+        if (e instanceof SQLTimeoutException || (e instanceof SQLException && "HYT00".equals(((SQLException) e).getSQLState()))) {
+            QueryWatchdog.countTimeout();
+            logger.info("Extract: query timeout: " + e.getMessage());
+            return true;
+        }
+        return false;
+    }
+
+    // Extract alarm events of the time range using bulk alarm extractor, and queue them for upload
+    // in chunks. Returns number of extracted alarms or EXTRACT_RESULT_FAILED.
+    private static long extractAlarms(ChunkSink pipeline, UploadPipeline.Tracker tracker, long startMilli, long endMilli) throws Exception {
+        Connection conn = getSourceConnection(type);
+        List<AlarmExtractor.Alarm> alarms = null;
+        try {
+            alarms = alarmExtractor.extract(conn, startMilli, endMilli);
+        } catch (SQLException e) {
+            if (e instanceof SQLTimeoutException) QueryWatchdog.countTimeout();
+            logger.info("Extract: SQLException: " + e.getMessage());
+            releaseSourceConnection(conn, true);
+            return Constants.EXTRACT_RESULT_FAILED;
+        }
+        releaseSourceConnection(conn, false);
+        putAlarms(pipeline, tracker, alarms);
+        return alarms.size();
+    }
+
+    // Queue alarm events for upload in chunks
+    private static void putAlarms(ChunkSink pipeline, UploadPipeline.Tracker tracker, List<AlarmExtractor.Alarm> alarms) throws Exception {
+        if (readGovernor != null) {
+            readGovernor.acquireRows(alarms.size());
+        }
+        int maxChunkRows = Integer.MAX_VALUE;
+        if (streamingExtract == 1) {
+            maxChunkRows = extractChunkSize;
+        }
+        int pos = 0;
+        while (pos < alarms.size()) {
+            int chunkRows = Math.min(maxChunkRows, alarms.size() - pos);
+            RowBatch batch = pipeline.newBatch();
+            getAlarmRowBatch(alarms.subList(pos, pos + chunkRows), batch);
+            pos += chunkRows;
+            offsetRecord.setProcessedCount(chunkRows);
+            pipeline.put(batch, tracker);
+        }
+    }
+
+    // Extract one batch of alarm events after the last extracted alarm id, queue them for upload in chunks,
+    // and move the alarm id in the offset once they are uploaded. Alarm id starts after the alarms before
+    // the offset time. Returns number of extracted alarms or EXTRACT_RESULT_FAILED.
+    private static long extractAlarmsById(UploadPipeline pipeline) throws Exception {
+        if (readGovernor != null) {
+            readGovernor.acquireQuery();
+        }
+        Connection conn = getSourceConnection(type);
+        List<AlarmExtractor.Alarm> alarms = null;
+        try {
+            long lastAlarmId = offsetRecord.getLastAlarmId();
+            if (lastAlarmId < 0) {
+                lastAlarmId = alarmExtractor.getStartId(conn, offsetRecord.getStartTimeSecs() * 1000);
+                logger.info("Alarm id extraction is started: lastAlarmId=" + lastAlarmId);
+                offsetRecord.setLastAlarmId(lastAlarmId, offsetRecord.getStartTimeSecs());
+            }
+            alarms = alarmExtractor.extractAfterId(conn, lastAlarmId);
+        } catch (SQLException e) {
+            if (e instanceof SQLTimeoutException) QueryWatchdog.countTimeout();
+            logger.info("Extract: SQLException: " + e.getMessage());
+            releaseSourceConnection(conn, true);
+            return Constants.EXTRACT_RESULT_FAILED;
+        } finally {
+            if (readGovernor != null) {
+                readGovernor.releaseQuery();
+            }
+        }
+        releaseSourceConnection(conn, false);
+        if (alarms.size() == 0) {
+            return 0;
+        }
+        putAlarms(pipeline, null, alarms);
+
+        // Alarm id is moved only after all chunks of the batch are uploaded
+        pipeline.waitForUploads();
+        AlarmExtractor.Alarm last = alarms.get(alarms.size() - 1);
+        long eventTimeSecs = (last.eventtime != null) ? last.eventtime.getTime() / 1000 : offsetRecord.getStartTimeSecs();
+        offsetRecord.setLastAlarmId(last.getId(), eventTimeSecs);
+        return alarms.size();
+    }
+
+    // Read alarm events into a row batch, same as getRowBatch for the alarm SQL template
+    private static void getAlarmRowBatch(List<AlarmExtractor.Alarm> alarms, RowBatch batch) {
+        for (AlarmExtractor.Alarm alarm : alarms) {
+            String tagpath = alarm.tagpath == null ? "" : alarm.tagpath.toLowerCase();
+            batch.addRow();
+            batch.setLong(RowBatch.ALARMID, alarm.id);
+            batch.setObject(RowBatch.EVENTID, alarm.eventid);
+            if (alarm.tagpath != null) batch.setString(RowBatch.TAG, tagpath);
+            batch.setObject(RowBatch.DISPLAYPATH, alarm.displaypath);
+            batch.setObject(RowBatch.PRIORITY, alarm.priority);
+            batch.setObject(RowBatch.ETYPE, alarm.eventtype);
+            batch.setObject(RowBatch.TIMESTAMP, alarm.eventtime);
+            batch.setString(RowBatch.NAME, alarm.name);
+            batch.setString(RowBatch.ACKBY, alarm.ackby);
+            batch.setObject(RowBatch.VALUE, alarm.value);
+
+            TagData td = getTagData(tagpath, 0);
+            batch.setString(RowBatch.DEVICEID, td.getDeviceId());
+            batch.setString(RowBatch.DEVICETYPE, td.getDeviceType());
+        }
+    }
+
+    // Open the destination connection of an upload worker. The connection is used for all chunks
+    // and entity types uploaded by the worker. Returns null on configuration issue.
+    static Connection getUploadConnection() {
         String connStr = config.getMonitorDBUrl();
         String dbUser = config.getMonitorDBUser();
         String dbPassword = config.getMonitorDBPass();
-       
+
         if (connStr == null || dbUser == null || dbPassword == null) {
             logger.severe("Monitor DB Configuration issue: null URL, user or password");
-            return rowsProcessed;
-        } 
+            return null;
+        }
         try {
             Class.forName("com.ibm.db2.jcc.DB2Driver");
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            return null;
+        }
+        return getDestinationDBConnection(connStr, dbUser, dbPassword);
+    }
+
+    // Upload a chunk of extracted rows. Rows are split by device type as they are extracted, so each
+    // entity type inserts its own rows and no row is visited twice. Returns number of uploaded rows.
+    static long uploadChunk(RowBatch batch, Connection conn) throws SQLException {
+        long totalUploaded = 0;
+        if (conn == null) {
+            return totalUploaded;
+        }
+        int ntypes = batch.getDictSize(RowBatch.DEVICETYPE);
+        for (int code = 0; code < ntypes; code++) {
+            String eType = batch.getDictValue(RowBatch.DEVICETYPE, code);
+            if (!entityTypes.contains(eType)) {
+                continue;
+            }
+            int nuploaded = batchInsert(conn, batch, eType, code);
+            offsetRecord.setUploadedCount(nuploaded);
+            totalUploaded += nuploaded;
+        }
+        return totalUploaded;
+    }
+
+    // Insert the rows of an entity type, eTypeCode is the dictionary code of the type in the DEVICETYPE column.
+    // Failed batches are skipped. Throws SQLException if the connection fails.
+    public static int batchInsert(Connection conn, RowBatch batch, String eType, int eTypeCode) throws SQLException {
+        int rowsProcessed = 0;
+        int batchCount = 0;
 
+        int[] rows = batch.getTypeRows(eTypeCode);
+        int totalRows = batch.getTypeRowCount(eTypeCode);
+        if (totalRows == 0) {
+            return rowsProcessed;
+        }
+        PreparedStatement ps = null;
+        try {
             String insertSQL = dbHelper.getMonitorInsertSQL(eType);
             logger.info("SQL Stmt: " + insertSQL);
 
-            Connection conn = getDestinationDBConnection(connStr, dbUser, dbPassword);
-            PreparedStatement ps = conn.prepareStatement(insertSQL);
+            ps = conn.prepareStatement(insertSQL);
+            MonitorBinder binder = dbHelper.getMonitorBinder();
 
-            for (int i=0; i<totalRows; i++) {
+            for (int n=0; n<totalRows; n++) {
                 try {
-                    String sourceMapEType = String.valueOf(sourceMap.get("DEVICETYPE").get(i));
-                    if (sourceMapEType.equals(eType)) {
-                        ps = dbHelper.getMonitorPS(ps, sourceMap, i);
-                        ps.addBatch();
-                        batchCount += 1;
-                        rowsProcessed += 1; 
-                        if ( batchCount >= batchInsertSize ) {
-                            logger.info(String.format("Batch update table: count:%d", batchCount));
-                            try {
-                                ps.executeBatch();
-                            } catch(Exception bex) {
-                                logger.log(Level.FINE, bex.getMessage(), bex);
-                                rowsProcessed = rowsProcessed - batchCount; 
-                                if (bex instanceof SQLException) {
-                                    SQLException ne = ((SQLException)bex).getNextException();
-                                    logger.log(Level.FINE, ne.getMessage(), ne);
-                                }
+                    binder.bind(ps, batch, rows[n]);
+                    ps.addBatch();
+                    batchCount += 1;
+                    rowsProcessed += 1; 
+                    if ( batchCount >= batchInsertSize ) {
+                        logger.info(String.format("Batch update table: count:%d", batchCount));
+                        try {
+                            ps.executeBatch();
+                        } catch(Exception bex) {
+                            logger.log(Level.FINE, bex.getMessage(), bex);
+                            rowsProcessed = rowsProcessed - batchCount; 
+                            if (bex instanceof SQLException) {
+                                SQLException ne = ((SQLException)bex).getNextException();
+                                logger.log(Level.FINE, ne.getMessage(), ne);
                             }
-                            conn.commit();
-                            ps.clearBatch();
-                            batchCount = 0;
                         }
+                        conn.commit();
+                        ps.clearBatch();
+                        batchCount = 0;
                     }
                 } catch (Exception ex) {
                     logger.log(Level.FINE, ex.getMessage(), ex);
@@ -321,11 +973,18 @@ public class DBConnector {
                 ps.clearBatch();
             }
             conn.commit();
-            conn.close();
             logger.info(String.format("Total rows processed: %d", rowsProcessed));
         }
-        catch (Exception e) {
+        catch (SQLException e) {
             logger.info("rowsProcessed: " + rowsProcessed + " batchCount: " + batchCount);
+            throw e;
+        }
+        finally {
+            if (ps != null) {
+                try {
+                    ps.close();
+                } catch (Exception e) {}
+            }
         }
 
         return rowsProcessed;
@@ -382,15 +1041,13 @@ public class DBConnector {
     }
 
 
+    // Borrow a source connection from the connection pool. Connection must be returned
+    // using releaseSourceConnection.
     private static Connection getSourceConnection(int type) {
         Connection conn = null;
         while (conn == null) {
             try {
-                if ( type == Constants.DB_SOURCE_TYPE_MYSQL ) {
-                    conn = DriverManager.getConnection(DB_URL, config.getIgnitionDBUser(), config.getIgnitionDBPass());
-                } else {
-                    conn = DriverManager.getConnection(DB_URL);
-                }
+                conn = SourceConnectionPool.getInstance(config).getConnection();
                 sourceDBConnState = 1;
             } catch(Exception e) {
                 logger.log(Level.INFO, e.getMessage(), e);
@@ -408,101 +1065,173 @@ public class DBConnector {
         return conn;
     }
 
-    private static int getSourceMap(List<String> sourceDBColumnNames, ResultSet rs, Map<String, List<Object>> sourceMap) throws Exception {
+    // Read at most maxRows rows from the result set into the row batch. Returns number of rows read.
+    // The query watch (may be null) is paused while the read governor waits.
+    private static int getRowBatch(ResultSetDecoder decoder, ResultSet rs, RowBatch batch, int maxRows, QueryWatchdog.Watch watch) throws Exception {
         int rowCount = 0;
-        for (int i=0; i < dbCols.length; i++) {
-            sourceMap.put(dbCols[i], new ArrayList<>());
-        }
 
-        while (rs.next()) {
+        // Join-free data query: tag attributes are resolved from tag catalog
+        int tagidColumn = decoder.getTagIdColumn();
+        int tagpathColumn = decoder.getTagpathColumn();
+        boolean useCatalog = (tagCatalog != null && tagidColumn > 0 && tagpathColumn == 0);
+        boolean useFilter = (tagFilter != null && tagidColumn > 0 && (useCatalog || tagpathColumn > 0));
+        int tstampColumn = decoder.getTStampColumn();
+        boolean useLiveTail = (liveTail != null && liveTail.isPolling() && tagidColumn > 0 && tstampColumn > 0);
+        boolean isDevice = (connectorType == Constants.CONNECTOR_DEVICE);
+        boolean useIntern = (tagIntern != null && tagidColumn > 0);
 
-            String tagpath = "";
-            long tid = 0;
-     
-            sourceMap.get("EVENTTYPE").add(connectorTypeStr);
-            sourceMap.get("FORMAT").add("JSON");
-            sourceMap.get("LOGICALINTERFACE_ID").add("null");
+        // rows read from source are counted against the read governor rate limit, including skipped rows
+        int governedRows = 0;
 
-            for (int i = 1; i <= sourceDBColumnCount; i++) {
-                String colName = sourceDBColumnNames.get(i-1);
-                if (rs.getObject(i) != null) {
-                    if (colName.equals("tagpath")) {
-                        tagpath = rs.getString(i).toLowerCase();
-                        sourceMap.get("TAG").add(tagpath);
+        while (rowCount < maxRows && rs.next()) {
 
-                    } else if (colName.equals("t_stamp")) {
-                        long lastTimeStamp = rs.getLong(i);
-                        Timestamp ts = new Timestamp(lastTimeStamp);
-                        sourceMap.get("RCV_TIMESTAMP_UTC").add(ts);
-                        sourceMap.get("UPDATED_UTC").add(ts);
+            if (readGovernor != null && ++governedRows == GOVERNOR_ROWS) {
+                readGovernor.acquireRows(governedRows, watch);
+                governedRows = 0;
+            }
 
-                    } else if (colName.equals("eventtype")) {
-                        sourceMap.get("ETYPE").add(rs.getObject(i));
+            long rowTagId = (tagidColumn > 0) ? rs.getLong(tagidColumn) : 0;
 
-                    } else if (colName.equals("eventtime")) {
-                        sourceMap.get("RCV_TIMESTAMP_UTC").add(rs.getObject(i));
-                        sourceMap.get("UPDATED_UTC").add(rs.getObject(i));
+            // Skip rows extracted by an earlier live tail poll
+            if (useLiveTail && !liveTail.accept(rowTagId, rs.getLong(tstampColumn))) continue;
 
-                    } else if (colName.equals("tagid")) {
-                        tid = rs.getLong(i);
-                        sourceMap.get("TAGID").add(tid);
+            // Tag attributes are resolved once per tag id, on the first row of the tag
+            TagInternTable.Entry entry = useIntern ? tagIntern.get(rowTagId) : null;
+            TagCatalog.Tag tag = null;
 
-                    } else if (colName.equals("id")) {
-                        sourceMap.get("ALARMID").add(rs.getLong(i));
+            if (useCatalog && entry == null) {
+                tag = tagCatalog.get(rowTagId);
+                if (tag == null) {
+                    // tag without tag path, excluded by the tag filter
+                    logger.fine("Tag has no tag path in tag catalog: tagid=" + rowTagId);
+                    continue;
+                }
+            }
 
-                    } else { 
-                        sourceMap.get(colName.toUpperCase()).add(rs.getObject(i));
+            // Skip rows of excluded tags before any other processing
+            if (useFilter) {
+                int state = tagFilter.getState(rowTagId);
+                if (state == TagFilter.UNKNOWN) {
+                    String tp = (entry != null) ? entry.getTagpath() : (tag != null) ? tag.getTagpath() : rs.getString(tagpathColumn);
+                    state = tagFilter.check(rowTagId, (tp != null) ? tp.toLowerCase() : null);
+                }
+                if (state == TagFilter.EXCLUDED) continue;
+            }
 
-                    }
-                } else {
-                    String data = "null";
-                    sourceMap.get(colName.toUpperCase()).add(data);
+            batch.addRow();
+            decoder.decode(rs, batch);
+            if (entry == null && useIntern) {
+                entry = getTagEntry(decoder, rs, tag);
+            }
+            if (entry != null) {
+                batch.setString(RowBatch.TAG, entry.getTagpath());
+                batch.setString(RowBatch.DEVICEID, entry.getDeviceId());
+                batch.setString(RowBatch.DEVICETYPE, entry.getDeviceType());
+                if (isDevice) {
+                    batch.setString(RowBatch.EVT_NAME, entry.getEvtName());
+                }
+            } else {
+                // Rows without tag id, e.g. of alarm templates, are not interned: attributes are read from the tag cache
+                String tagpath = decoder.getTagpath(rs);
+                TagData td = getTagData(tagpath, decoder.getTagId());
+                batch.setString(RowBatch.TAG, tagpath);
+                batch.setString(RowBatch.DEVICEID, td.getDeviceId());
+                batch.setString(RowBatch.DEVICETYPE, td.getDeviceType());
+                if (isDevice) {
+                    batch.setString(RowBatch.EVT_NAME, getEvtName(tagpath));
                 }
             }
+            rowCount += 1;
+        }
+        if (readGovernor != null) {
+            readGovernor.acquireRows(governedRows, watch);
+        }
 
+        return rowCount;
+    }
 
-            TagData td = null;
-            String idString = clientSite + ":" + tagpath;
-            String dId = "";
-            String dType = "";
+    // Resolve tag attributes of the current row from the tag catalog or tag path, and the tag cache.
+    // Attributes are added to the intern table, so the tag cache is used only for the first row of a tag.
+    private static TagInternTable.Entry getTagEntry(ResultSetDecoder decoder, ResultSet rs, TagCatalog.Tag tag) throws SQLException {
+        String tagpath = (tag != null) ? tag.getTagpath() : decoder.getTagpath(rs);
+        long tid = decoder.getTagId();
 
-            try {
-                td = tagpaths.get(idString);
-                dId = td.getDeviceId();
-                dType = td.getDeviceType();
-                // logger.info(String.format("OLD: dType=%s idStr=%s dId=%s", dType, tagpath, dId));
-            } catch(Exception e) {}
-            if (td == null) {
-                dId = UUID.nameUUIDFromBytes(idString.getBytes()).toString();
-                dType = config.getTypeByTagname(tagpath);
-                td = new TagData(clientSite, tagpath, dId, dType);
-                if (connectorType == Constants.CONNECTOR_DEVICE) {
-                    td.setId(tid);
-                }
-                try {
-                    tagpaths.putSafe(idString, td);
-                    offsetRecord.setEntityCount(1);
-                } catch(Exception e) {}
-                // logger.info(String.format("NEW: dType=%s idStr=%s dId=%s", dType, tagpath, dId));
+        TagData td = null;
+        if (tag != null) {
+            td = tag.getTagData();
+        }
+        if (td == null) {
+            td = getTagData(tagpath, tid);
+            if (tag != null) {
+                tag.setTagData(td);
             }
-            sourceMap.get("DEVICEID").add(dId);
-            sourceMap.get("DEVICETYPE").add(dType);
+        }
+        String evtName = null;
+        if (tag != null) {
+            evtName = tag.getEvtName();
+        } else {
+            evtName = getEvtName(tagpath);
+        }
+        return tagIntern.put(tid, tagpath, td.getDeviceId(), td.getDeviceType(), evtName);
+    }
+
+    // Event name of a tag path: last element of the path
+    private static String getEvtName(String tagpath) {
+        String[] tagelems = tagpath.split("/");
+        return tagelems[tagelems.length-1];
+    }
+
+    // Device id and type of a tag path, from tag cache. New tags are added to the cache.
+    private static TagData getTagData(String tagpath, long tid) {
+        TagData td = null;
+        String idString = clientSite + ":" + tagpath;
+        String dId = "";
+        String dType = "";
+
+        try {
+            td = tagpaths.get(idString);
+        } catch(Exception e) {}
+        if (td == null) {
+            dId = UUID.nameUUIDFromBytes(idString.getBytes()).toString();
+            dType = config.getTypeByTagname(tagpath);
+            td = new TagData(clientSite, tagpath, dId, dType);
             if (connectorType == Constants.CONNECTOR_DEVICE) {
-                String[] tagelems = tagpath.split("/");
-                sourceMap.get("EVT_NAME").add(tagelems[tagelems.length-1]);
+                td.setId(tid);
             }
-            rowCount += 1;
+            try {
+                tagpaths.putSafe(idString, td);
+                offsetRecord.setEntityCount(1);
+            } catch(Exception e) {}
         }
+        return td;
+    }
 
-        return rowCount;
+    private static void releaseSourceConnection(Connection conn, boolean broken) {
+        SourceConnectionPool.getInstance(config).releaseConnection(conn, broken);
+    }
+
+    private static void closeSourceResources(Statement stmt, ResultSet rs, Connection conn, boolean broken) {
+        try {
+            if (rs != null) rs.close();
+        } catch (Exception e) {}
+        try {
+            if (stmt != null) stmt.close();
+        } catch (Exception e) {}
+        if (conn != null) releaseSourceConnection(conn, broken);
     }
 
     private static void resetDBConnection(Statement stmt, ResultSet rs, Connection conn) throws Exception {
         if (stmt != null) stmt.close();
         if (rs != null) rs.close();
-        if (conn != null) conn.close();
+        if (conn != null) releaseSourceConnection(conn, true);
+        // exponential backoff on consecutive failures
+        long waitTime = Math.min(MAX_BACKOFF_MILLI, 50L << Math.min(failureCount, 20));
+        failureCount++;
+        if (waitTime > 50) {
+            logger.info(String.format("Extraction failed %d times. Retry in %d ms", failureCount, waitTime));
+        }
         try {
-            Thread.sleep(50);
+            Thread.sleep(waitTime);
         } catch (Exception e) {}
     }
 
@@ -530,103 +1259,119 @@ public class DBConnector {
         return conn;
     }
 
-    // extract raw data and store in csv file
+    // Dump a source table in a csv file. Table is read in pages of chunkSize rows using keyset pagination,
+    // on (tagid, t_stamp) for data partition tables (sqlt_data_*) and on id for other tables.
     public static void extractRawData(String tableName, String csvFilePath) throws Exception {
 
-        FileWriter fw = null;
-        Connection conn = null;
-        Statement stmt = null;
         int chunkSize = 10000;
-        int startRecord = 0;
-        String querySql = "";
-
-        try {
-            logger.info("Connecting to source to extract data for " + tableName);
+        boolean dataTable = tableName.startsWith("sqlt_data");
+        String keyPredicate = "id > ?";
+        String keyOrder = "id";
+        if (dataTable) {
+            keyPredicate = "tagid > ? OR (tagid = ? AND t_stamp > ?)";
+            keyOrder = "tagid, t_stamp";
+        }
+        String querySql;
+        if (type == Constants.DB_SOURCE_TYPE_MSSQL) {
+            querySql = String.format("SELECT TOP %d * FROM %s WHERE %s ORDER BY %s", chunkSize, tableName, keyPredicate, keyOrder);
+        } else {
+            querySql = String.format("SELECT * FROM %s WHERE %s ORDER BY %s LIMIT %d", tableName, keyPredicate, keyOrder, chunkSize);
+        }
 
-            logger.info("Dump extracted data to: " + csvFilePath);
-            fw = new FileWriter(csvFilePath);
+        logger.info("Connecting to source to extract data for " + tableName);
+        logger.info("Dump extracted data to: " + csvFilePath);
 
+        String lineSeparator = System.getProperty("line.separator");
+        Connection conn = getSourceConnection(type);
+        boolean brokenConn = false;
+        BufferedWriter bw = Files.newBufferedWriter(Paths.get(csvFilePath), StandardCharsets.UTF_8);
+        try {
+            PreparedStatement stmt = SourceConnectionPool.getInstance(config).prepareStatement(conn, querySql);
+            long lastTagId = -1;
+            long lastTimeStamp = -1;
+            long lastId = -1;
+            long totalRows = 0;
             int headerWritten = 0;
-            while ( true ) {
-                logger.info(String.format("TableName:%s StartRecord:%d ChunkSize:%d", tableName, startRecord, chunkSize));
-                if (tableName.equals("sqlt_data")) {
-                    querySql = String.format("SELECT * FROM sqlt_data_1_2021_05 LIMIT %d, %d", startRecord, chunkSize);
+            int rowCount = 0;
+
+            do {
+                if (dataTable) {
+                    stmt.setLong(1, lastTagId);
+                    stmt.setLong(2, lastTagId);
+                    stmt.setLong(3, lastTimeStamp);
                 } else {
-                    querySql = String.format("SELECT * FROM sqlth_te LIMIT %d, %d", startRecord, chunkSize);
+                    stmt.setLong(1, lastId);
                 }
 
-                conn = getSourceConnection(type);
-                stmt = conn.createStatement();
-
                 ResultSet rs = null;
-                int gotData = 1;
                 try {
-                    rs = stmt.executeQuery(querySql);
-                } catch (Exception qex) {
-                    gotData = 0;
-                    if (qex instanceof SQLException) {
-                        int errCode = ((SQLException)qex).getErrorCode();
-                        if (errCode == 1146) {
-                            System.out.println("Table not found in source"); 
-                        } else {
-                            System.out.println("SQLException: " + qex.getMessage());
-                        }
+                    rs = stmt.executeQuery();
+                } catch (SQLException qex) {
+                    if (qex.getErrorCode() == 1146) {
+                        System.out.println("Table not found in source"); 
+                    } else {
+                        System.out.println("SQLException: " + qex.getMessage());
+                        brokenConn = true;
                     }
-                }
-
-                if (gotData == 0) {
-                    resetDBConnection(stmt, rs, conn);
                     break;
                 }
 
-
-                // Get column count
-                final ResultSetMetaData rsmd = rs.getMetaData();
-                int columnCount = rsmd.getColumnCount();
-    
-                // Open csv file and write column headers
-                if (headerWritten == 0) {
+                try {
+                    // Get column count and key columns
+                    final ResultSetMetaData rsmd = rs.getMetaData();
+                    int columnCount = rsmd.getColumnCount();
+                    int tagIdCol = 0;
+                    int tstampCol = 0;
+                    int idCol = 0;
                     for (int i = 1; i <= columnCount; i++) {
-                        fw.append(rs.getMetaData().getColumnName(i));
-                        if ( i < columnCount ) fw.append(",");
+                        String colName = rsmd.getColumnName(i);
+                        if (colName.equalsIgnoreCase("tagid")) tagIdCol = i;
+                        else if (colName.equalsIgnoreCase("t_stamp")) tstampCol = i;
+                        else if (colName.equalsIgnoreCase("id")) idCol = i;
                     }
-                    fw.append(System.getProperty("line.separator"));
-                    headerWritten = 1;
-                }
-    
-                // For each row, loop thru the number of columns and write to the csv file
-                int rowCount = 0;
-                while (rs.next()) {
-                    for (int i = 1; i <= columnCount; i++) {
-                        if (rs.getObject(i) != null) {
-                            fw.append(rs.getString(i).replaceAll(",", " "));
+
+                    // Write column headers
+                    if (headerWritten == 0) {
+                        for (int i = 1; i <= columnCount; i++) {
+                            bw.write(rsmd.getColumnName(i));
+                            if ( i < columnCount ) bw.write(',');
+                        }
+                        bw.write(lineSeparator);
+                        headerWritten = 1;
+                    }
+
+                    // For each row, loop thru the number of columns and write to the csv file
+                    rowCount = 0;
+                    while (rs.next()) {
+                        for (int i = 1; i <= columnCount; i++) {
+                            String data = rs.getString(i);
+                            if (data != null) {
+                                bw.write(data.replace(',', ' '));
+                            } else {
+                                bw.write("null");
+                            }
+                            if ( i < columnCount ) bw.write(',');
+                        }
+                        bw.write(lineSeparator);
+                        if (dataTable) {
+                            lastTagId = rs.getLong(tagIdCol);
+                            lastTimeStamp = rs.getLong(tstampCol);
                         } else {
-                            String data = "null";
-                            fw.append(data);
+                            lastId = rs.getLong(idCol);
                         }
-                        if ( i < columnCount ) fw.append(",");
+                        rowCount += 1;
                     }
-                    fw.append(System.getProperty("line.separator"));
-                    rowCount += 1;
+                    totalRows += rowCount;
+                    logger.info(String.format("Data extracted: table=%s columns=%d rows=%d total=%d", tableName, columnCount, rowCount, totalRows));
+                } finally {
+                    rs.close();
                 }
-                fw.flush();
-    
-                String msg1 = String.format("Data extracted: columns=%d  rows=%d\n", columnCount, rowCount);
-                logger.info(msg1);
+            } while (rowCount == chunkSize);
 
-                if (rs != null) rs.close();
-                if (stmt != null) stmt.close();
-                if (conn != null) conn.close();
-
-                startRecord += chunkSize;
- 
-            }
-        
-            fw.close();
             logger.info("Sample Data extraction cycle is complete.");
-					
-        } catch (Exception ex) {
-            throw ex;
+        } finally {
+            bw.close();
+            releaseSourceConnection(conn, brokenConn);
         }
     }
 }
@@ -63,6 +63,7 @@ public class DBHelper {
     private static int updateFlag = 0;
     private static int httpPort;
     private static int cliPort;
+    private MonitorBinder monitorBinder;
     private static int extractQueryMode = 0;  // QueryMode is not set in extract SQL. Extract all
                                               // 1 - Discrete/Digital queryMode
                                               // 2 - Analog queryMode
@@ -72,30 +73,11 @@ public class DBHelper {
         this.connectorType = connConfig.getConnectorType();
         this.installDir = connConfig.getInstallDir();
         this.dataDir = connConfig.getDataDir();
+        this.monitorBinder = MonitorBinder.forConnector(this.connectorType);
     }
 
     public String getIgnitionDBSql(long startMilli, long endMilli, int year, int month) {
-        String sqlStr = "";
-        try {
-            if (connectorType == Constants.CONNECTOR_DEVICE) {
-                String sqlTemplateFile = dataDir + "/volume/config/deviceSqlTemplate.sql";
-                String templateSql = new String(Files.readAllBytes(Paths.get(sqlTemplateFile)));
-                sqlStr = String.format(templateSql, year, month, startMilli, endMilli);
-            } else {
-                Date sDate = new Date(startMilli);
-                Date eDate = new Date(endMilli);
-                DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                String sDateStr = df.format(sDate);
-                String eDateStr = df.format(eDate);
-                String sqlTemplateFile = dataDir + "/volume/config/alarmSqlTemplate.sql";
-                String templateSql = new String(Files.readAllBytes(Paths.get(sqlTemplateFile)));
-                sqlStr = String.format(templateSql, sDateStr, eDateStr);
-            }
-        } catch(Exception ex) {
-            ex.printStackTrace();
-        }
-
-        return sqlStr; 
+        return connConfig.getIgnitionDBSql(startMilli, endMilli, year, month);
     }
 
     public String[] getMonitorDBCols() {
@@ -128,65 +110,9 @@ public class DBHelper {
         return insertSQL;
     }
 
-    public PreparedStatement getMonitorPS(PreparedStatement ps, Map<String, List<Object>> sourceMap, int i) throws Exception {
-        if (this.connectorType == 1) {
-
-            ps.setInt(1, Integer.parseInt((sourceMap.get("TAGID").get(i)).toString()));
-            if (((sourceMap.get("INTVALUE").get(i)).toString()).equals("null")) {
-                ps.setInt(2, 0);
-            } else {
-                ps.setInt(2, Integer.parseInt((sourceMap.get("INTVALUE").get(i)).toString()));
-            }
-            if (((sourceMap.get("FLOATVALUE").get(i)).toString()).equals("null")) {
-                ps.setDouble(3, 0.0);
-            } else {
-                ps.setDouble(3, Double.parseDouble((sourceMap.get("FLOATVALUE").get(i)).toString()));
-            }
-            ps.setString(4, String.valueOf(sourceMap.get("STRINGVALUE").get(i)));
-            ps.setString(5, String.valueOf(sourceMap.get("DATEVALUE").get(i)));
-            ps.setString(6, String.valueOf(sourceMap.get("TAG").get(i)));
-            ps.setString(7, String.valueOf(sourceMap.get("EVT_NAME").get(i)));
-            ps.setString(8, String.valueOf(sourceMap.get("DEVICETYPE").get(i)));
-            ps.setString(9, String.valueOf(sourceMap.get("DEVICEID").get(i)));
-            ps.setString(10, String.valueOf(sourceMap.get("LOGICALINTERFACE_ID").get(i)));
-            ps.setString(11,String.valueOf(sourceMap.get("EVENTTYPE").get(i)));
-            ps.setString(12,String.valueOf(sourceMap.get("FORMAT").get(i)));
-            ps.setTimestamp(13,Timestamp.valueOf((sourceMap.get("RCV_TIMESTAMP_UTC").get(i)).toString()));
-            ps.setTimestamp(14,Timestamp.valueOf((sourceMap.get("UPDATED_UTC").get(i)).toString()));
-
-        } else {
-
-            ps.setDouble(1, Double.parseDouble((sourceMap.get("ALARMID").get(i)).toString()));
-            ps.setString(2, String.valueOf((sourceMap.get("EVENTID").get(i)).toString()));
-            ps.setString(3, String.valueOf((sourceMap.get("ACKBY").get(i)).toString()));
-            ps.setString(4, String.valueOf((sourceMap.get("NAME").get(i)).toString()));
-            if (((sourceMap.get("ETYPE").get(i)).toString()).equals("null")) {
-                ps.setDouble(5, 0.0);
-            } else {
-                ps.setDouble(5, Double.parseDouble((sourceMap.get("ETYPE").get(i)).toString()));
-            }
-            ps.setString(6, String.valueOf(sourceMap.get("DISPLAYPATH").get(i)));
-            if (((sourceMap.get("PRIORITY").get(i)).toString()).equals("null")) {
-                ps.setDouble(7, 0.0);
-            } else {
-                ps.setDouble(7, Double.parseDouble((sourceMap.get("PRIORITY").get(i)).toString()));
-            }
-            if (((sourceMap.get("VALUE").get(i)).toString()).equals("null")) {
-                ps.setDouble(8, 0.0);
-            } else {
-                ps.setDouble(8, Double.parseDouble((sourceMap.get("VALUE").get(i)).toString()));
-            }
-            ps.setString(9, String.valueOf(sourceMap.get("TAG").get(i)));
-            ps.setString(10, String.valueOf(sourceMap.get("DEVICETYPE").get(i)));
-            ps.setString(11, String.valueOf(sourceMap.get("DEVICEID").get(i)));
-            ps.setString(12, String.valueOf(sourceMap.get("LOGICALINTERFACE_ID").get(i)));
-            ps.setString(13,String.valueOf(sourceMap.get("EVENTTYPE").get(i)));
-            ps.setString(14,String.valueOf(sourceMap.get("FORMAT").get(i)));
-            ps.setTimestamp(15,Timestamp.valueOf((sourceMap.get("RCV_TIMESTAMP_UTC").get(i)).toString()));
-            ps.setTimestamp(16,Timestamp.valueOf((sourceMap.get("UPDATED_UTC").get(i)).toString()));
-
-        }
-        return ps;
+    // Binder of rows to the insert statement of getMonitorInsertSQL
+    public MonitorBinder getMonitorBinder() {
+        return monitorBinder;
     }
 
     public String[] getConnectorStatsDBCols() {
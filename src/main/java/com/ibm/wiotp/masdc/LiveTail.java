@@ -0,0 +1,254 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+
+// Live tail extraction of device data. Once the offset has caught up with the current time,
+// source is polled at a short interval for rows after the last observed (t_stamp, tagid)
+// high-water mark, instead of wall clock windows. Each poll goes back by the lateness allowance,
+// so rows written late are still picked up. Rows already extracted in the lateness allowance are
+// skipped using a map of extracted (t_stamp, tagid) keys. Keys are tracked only for rows read by
+// poll(), rows of window extraction (e.g. partition backfill) are not deduplicated.
+// Live tail is used only while it keeps up with the current time: once the polled position falls
+// more than one fetch interval behind (e.g. after a restart with an old watermark), live tail is
+// stopped and extraction goes back to windows from the offset. A single poll reads at most the
+// lateness allowance plus one fetch interval.
+
+public class LiveTail {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private OffsetRecord offsetRecord;
+    private long pollIntervalMilli;
+    private long latenessMilli;
+
+    // high-water mark, -1 while live tail is not started
+    private long watermarkTStamp = -1;
+    private long watermarkTagId = 0;
+
+    // end of the last committed poll
+    private long polledToMilli = -1;
+
+    // high-water mark and end of the current poll, saved on commit
+    private long pendingTStamp = -1;
+    private long pendingTagId = 0;
+    private long pendingPolledToMilli = -1;
+
+    // tag ids of extracted rows by t_stamp in the lateness allowance, and of rows of the current poll
+    private TreeMap<Long, Set<Long>> extracted = new TreeMap<Long, Set<Long>>();
+    private TreeMap<Long, Set<Long>> pending = new TreeMap<Long, Set<Long>>();
+    private long duplicateCount = 0;
+
+    // set while poll() extracts rows
+    private volatile boolean polling = false;
+
+    public LiveTail(Config config, OffsetRecord offsetRecord) {
+        this(offsetRecord, config.getLiveTailPollInterval(), config.getLiveTailLateness());
+        this.watermarkTStamp = offsetRecord.getLiveWatermarkTStamp();
+        this.watermarkTagId = offsetRecord.getLiveWatermarkTagId();
+        this.polledToMilli = watermarkTStamp;
+        rollback();
+    }
+
+    // Live tail without a saved watermark. If offset record is null, watermark is not saved on commit.
+    LiveTail(OffsetRecord offsetRecord, long pollIntervalMilli, long latenessMilli) {
+        this.offsetRecord = offsetRecord;
+        this.pollIntervalMilli = pollIntervalMilli;
+        this.latenessMilli = latenessMilli;
+    }
+
+    // Live tail is started once the offset catches up, or if a watermark is saved in the offset file
+    public boolean isStarted() {
+        return watermarkTStamp >= 0;
+    }
+
+    // Start live tail when the offset is within one fetch interval of the current time, and stop it
+    // when the polled position is more than one fetch interval behind. Returns true if live tail is used.
+    public synchronized boolean isActive(long nowMilli) {
+        long maxLagMilli = offsetRecord.getFetchIntervalSecs() * 1000;
+        if (watermarkTStamp < 0) {
+            if (offsetRecord.isHistoricalWindow()) return false;
+            start(offsetRecord.getStartTimeSecs() * 1000);
+            logger.info("Live tail is started: watermark=" + watermarkTStamp);
+            return true;
+        }
+        if (Math.max(watermarkTStamp, polledToMilli) >= nowMilli - maxLagMilli) return true;
+
+        logger.info(String.format("Live tail is behind, extract from offset: watermark=%d polledTo=%d", watermarkTStamp, polledToMilli));
+        watermarkTStamp = -1;
+        watermarkTagId = 0;
+        polledToMilli = -1;
+        extracted.clear();
+        rollback();
+        offsetRecord.clearLiveWatermark();
+        return false;
+    }
+
+    // True while rows read from the source belong to a live tail poll
+    public boolean isPolling() {
+        return polling;
+    }
+
+    public long getPollIntervalMilli() {
+        return pollIntervalMilli;
+    }
+
+    // True if the last committed poll reached the given time, i.e. the next poll can wait for the poll interval
+    public synchronized boolean isCaughtUp(long nowMilli) {
+        return polledToMilli >= nowMilli;
+    }
+
+    public synchronized long getWatermarkTStamp() {
+        return watermarkTStamp;
+    }
+
+    public synchronized long getWatermarkTagId() {
+        return watermarkTagId;
+    }
+
+    // Extract rows from the watermark (or the end of the last poll) less the lateness allowance, up to
+    // now or the poll limit, and add them to the upload pipeline. Extraction is split at a month boundary,
+    // each month is read from its own partition table. Returns number of extracted rows or EXTRACT_RESULT_FAILED.
+    public long poll(ChunkSink pipeline, long nowMilli) throws Exception {
+        long maxLagMilli = offsetRecord.getFetchIntervalSecs() * 1000;
+        long startMilli = getPolledFromMilli();
+        long pollEndMilli = Math.min(nowMilli, startMilli + latenessMilli + maxLagMilli);
+        long rowCount = 0;
+        polling = true;
+        try {
+            rowCount = pollRange(pipeline, startMilli, pollEndMilli);
+        } finally {
+            polling = false;
+        }
+        if (rowCount == Constants.EXTRACT_RESULT_FAILED) {
+            return rowCount;
+        }
+        synchronized (this) {
+            pendingPolledToMilli = pollEndMilli;
+        }
+        return rowCount;
+    }
+
+    // Extract rows of the poll range, month by month
+    private long pollRange(ChunkSink pipeline, long startMilli, long pollEndMilli) throws Exception {
+        long rowCount = 0;
+        while (startMilli < pollEndMilli) {
+            Calendar cal = Calendar.getInstance();
+            cal.setTimeInMillis(startMilli);
+            int year = cal.get(Calendar.YEAR);
+            int month = cal.get(Calendar.MONTH) + 1;
+            cal.set(Calendar.DAY_OF_MONTH, 1);
+            cal.set(Calendar.HOUR_OF_DAY, 0);
+            cal.set(Calendar.MINUTE, 0);
+            cal.set(Calendar.SECOND, 0);
+            cal.set(Calendar.MILLISECOND, 0);
+            cal.add(Calendar.MONTH, 1);
+            long endMilli = Math.min(pollEndMilli, cal.getTimeInMillis());
+
+            long rows = DBConnector.extractTable(pipeline, null, startMilli, endMilli, year, month, null);
+            if (rows == Constants.EXTRACT_RESULT_FAILED) {
+                return rows;
+            }
+            // partition table of a new month is created by the historian with the first row
+            if (rows > 0) rowCount += rows;
+            startMilli = endMilli;
+        }
+        return rowCount;
+    }
+
+    // Check a row read from the source. Returns false if the row is already extracted.
+    // Rows read outside of a poll are always accepted and not tracked.
+    public synchronized boolean accept(long tagId, long tStamp) {
+        if (!polling) return true;
+        Set<Long> tagIds = extracted.get(tStamp);
+        if (tagIds != null && tagIds.contains(tagId)) {
+            duplicateCount++;
+            return false;
+        }
+        tagIds = pending.get(tStamp);
+        if (tagIds == null) {
+            tagIds = new HashSet<Long>();
+            pending.put(tStamp, tagIds);
+        }
+        tagIds.add(tagId);
+        if (tStamp > pendingTStamp || (tStamp == pendingTStamp && tagId > pendingTagId)) {
+            pendingTStamp = tStamp;
+            pendingTagId = tagId;
+        }
+        return true;
+    }
+
+    // Save watermark once extracted rows are uploaded, and drop keys before the start of the next poll.
+    // Offset time is moved to the start of the next poll, so extraction resumes from there on restart.
+    public synchronized void commit() {
+        for (Map.Entry<Long, Set<Long>> e : pending.entrySet()) {
+            Set<Long> tagIds = extracted.get(e.getKey());
+            if (tagIds == null) {
+                extracted.put(e.getKey(), e.getValue());
+            } else {
+                tagIds.addAll(e.getValue());
+            }
+        }
+        pending.clear();
+        boolean moved = (pendingTStamp != watermarkTStamp || pendingTagId != watermarkTagId);
+        watermarkTStamp = pendingTStamp;
+        watermarkTagId = pendingTagId;
+        polledToMilli = Math.max(polledToMilli, pendingPolledToMilli);
+        long polledFromMilli = getPolledFromMilli();
+        extracted.headMap(polledFromMilli).clear();
+        if (moved && offsetRecord != null) {
+            offsetRecord.setLiveWatermark(watermarkTStamp, watermarkTagId, polledFromMilli / 1000);
+        }
+        if (duplicateCount > 0) {
+            logger.fine(String.format("Live tail: watermark=%d tagid=%d skipped=%d", watermarkTStamp, watermarkTagId, duplicateCount));
+            duplicateCount = 0;
+        }
+    }
+
+    // Forget rows of a failed poll, they are extracted again by the next poll
+    public synchronized void rollback() {
+        pending.clear();
+        pendingTStamp = watermarkTStamp;
+        pendingTagId = watermarkTagId;
+        pendingPolledToMilli = polledToMilli;
+    }
+
+    // Start live tail with a watermark
+    synchronized void start(long tStamp) {
+        watermarkTStamp = tStamp;
+        watermarkTagId = 0;
+        polledToMilli = tStamp;
+        extracted.clear();
+        rollback();
+    }
+
+    // Mark rows passed to accept() as read by a poll
+    void setPolling(boolean polling) {
+        this.polling = polling;
+    }
+
+    // Number of t_stamps with rows of the current poll
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    // Start of the next poll: the watermark or the end of the last poll, less the lateness allowance
+    private synchronized long getPolledFromMilli() {
+        return Math.max(watermarkTStamp, polledToMilli) - latenessMilli;
+    }
+
+}
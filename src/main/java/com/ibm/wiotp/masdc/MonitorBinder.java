@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+
+// Binds rows of a row batch to the data lake insert statement of DBHelper.getMonitorInsertSQL,
+// with native JDBC types. One binder per connector type. All parameters are bound for every row,
+// including the ones that are the same for all rows of a batch: drivers are not required to keep
+// parameter values after executeBatch. Null numbers are inserted as 0, null strings as "null".
+
+public abstract class MonitorBinder {
+
+    public static MonitorBinder forConnector(int connectorType) {
+        if (connectorType == Constants.CONNECTOR_DEVICE) {
+            return new DeviceBinder();
+        }
+        return new AlarmBinder();
+    }
+
+    // Bind parameters of row i of the batch
+    public abstract void bind(PreparedStatement ps, RowBatch batch, int i) throws SQLException;
+
+    static class DeviceBinder extends MonitorBinder {
+        public void bind(PreparedStatement ps, RowBatch batch, int i) throws SQLException {
+            ps.setInt(1, (int) batch.getLong(RowBatch.TAGID, i));
+            ps.setInt(2, batch.isNull(RowBatch.INTVALUE, i) ? 0 : (int) batch.getLong(RowBatch.INTVALUE, i));
+            ps.setDouble(3, batch.isNull(RowBatch.FLOATVALUE, i) ? 0.0 : batch.getDouble(RowBatch.FLOATVALUE, i));
+            setString(ps, 4, batch, RowBatch.STRINGVALUE, i);
+            if (batch.isNull(RowBatch.DATEVALUE, i)) {
+                ps.setString(5, "null");
+            } else {
+                ps.setString(5, new Timestamp(batch.getLong(RowBatch.DATEVALUE, i)).toString());
+            }
+            setString(ps, 6, batch, RowBatch.TAG, i);
+            setString(ps, 7, batch, RowBatch.EVT_NAME, i);
+            setString(ps, 8, batch, RowBatch.DEVICETYPE, i);
+            setString(ps, 9, batch, RowBatch.DEVICEID, i);
+            ps.setString(10, "null");
+            ps.setString(11, batch.getEventType());
+            ps.setString(12, "JSON");
+            setTimestamp(ps, 13, 14, batch, i);
+        }
+    }
+
+    static class AlarmBinder extends MonitorBinder {
+        public void bind(PreparedStatement ps, RowBatch batch, int i) throws SQLException {
+            ps.setDouble(1, (double) batch.getLong(RowBatch.ALARMID, i));
+            setString(ps, 2, batch, RowBatch.EVENTID, i);
+            setString(ps, 3, batch, RowBatch.ACKBY, i);
+            setString(ps, 4, batch, RowBatch.NAME, i);
+            setDouble(ps, 5, batch, RowBatch.ETYPE, i);
+            setString(ps, 6, batch, RowBatch.DISPLAYPATH, i);
+            setDouble(ps, 7, batch, RowBatch.PRIORITY, i);
+            setDouble(ps, 8, batch, RowBatch.VALUE, i);
+            setString(ps, 9, batch, RowBatch.TAG, i);
+            setString(ps, 10, batch, RowBatch.DEVICETYPE, i);
+            setString(ps, 11, batch, RowBatch.DEVICEID, i);
+            ps.setString(12, "null");
+            ps.setString(13, batch.getEventType());
+            ps.setString(14, "JSON");
+            setTimestamp(ps, 15, 16, batch, i);
+        }
+    }
+
+    private static void setString(PreparedStatement ps, int index, RowBatch batch, int col, int i) throws SQLException {
+        String value = batch.getString(col, i);
+        ps.setString(index, (value == null) ? "null" : value);
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, RowBatch batch, int col, int i) throws SQLException {
+        ps.setDouble(index, batch.isNull(col, i) ? 0.0 : batch.getDouble(col, i));
+    }
+
+    // RCV_TIMESTAMP_UTC and UPDATED_UTC
+    private static void setTimestamp(PreparedStatement ps, int rcvIndex, int updatedIndex, RowBatch batch, int i) throws SQLException {
+        if (batch.isNull(RowBatch.TIMESTAMP, i)) {
+            ps.setNull(rcvIndex, Types.TIMESTAMP);
+            ps.setNull(updatedIndex, Types.TIMESTAMP);
+        } else {
+            Timestamp ts = new Timestamp(batch.getLong(RowBatch.TIMESTAMP, i));
+            ps.setTimestamp(rcvIndex, ts);
+            ps.setTimestamp(updatedIndex, ts);
+        }
+    }
+
+}
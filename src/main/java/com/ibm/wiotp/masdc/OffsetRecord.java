@@ -33,6 +33,7 @@ public class OffsetRecord {
 
     private static long offsetInterval = 30L;
     private static long offsetIntervalHistorical = 1800L;
+    private static int adaptiveWindow = 0;
     private static int connectorType = 1; // 1-device, 2-alarm
     private static String startDate;
     private static String offsetFile;
@@ -49,7 +50,18 @@ public class OffsetRecord {
     private static AtomicLong rate = new AtomicLong(0);
     private static AtomicLong entityCount = new AtomicLong(0);
     private static AtomicLong entityTypeCount = new AtomicLong(0);
+    private static AtomicLong uploadQueueDepth = new AtomicLong(0);
+    private static AtomicLong uploadQueueSize = new AtomicLong(0);
+    private static AtomicLong uploadWorkersBusy = new AtomicLong(0);
+    private static AtomicLong uploadWorkers = new AtomicLong(0);
+    private static AtomicLong backfillPartitions = new AtomicLong(0);
+    private static AtomicLong backfillPartitionsDone = new AtomicLong(0);
+    private static AtomicLong backlogRows = new AtomicLong(-1);
+    private static AtomicLong backlogEtaSecs = new AtomicLong(-1);
     private static int currTimeWindowCycle = 0;
+    private static long liveWatermarkTStamp = -1;
+    private static long liveWatermarkTagId = 0;
+    private static long lastAlarmId = -1;
 
     public OffsetRecord(Config config, boolean newOffsetFile) {
         this.connectorType = config.getConnectorType();
@@ -66,6 +78,7 @@ public class OffsetRecord {
         offsetInterval = config.getFetchInterval();
         if (offsetInterval > 120) offsetInterval = 120;
         offsetIntervalHistorical = config.getFetchIntervalHistorical();
+        adaptiveWindow = config.getAdaptiveWindow();
 
         // check if offset file exists
         if (checkFileExists(offsetFile) == 1) {
@@ -89,6 +102,27 @@ public class OffsetRecord {
         return endTimeSecs;
     }
         
+    // Current window is a historical (catch-up) window: offset is more than one live fetch interval
+    // behind the current time. Decided by the lag and not by the window size, as the adaptive window
+    // controller can size historical windows below the fetch interval.
+    public boolean isHistoricalWindow() {
+        return startTimeSecs < (System.currentTimeMillis() / 1000) - offsetInterval;
+    }
+
+    // Live fetch interval
+    public long getFetchIntervalSecs() {
+        return offsetInterval;
+    }
+
+    // Size of historical windows, adjusted by adaptive window controller
+    public long getHistoricalWindowSecs() {
+        return offsetIntervalHistorical;
+    }
+
+    public void setHistoricalWindowSecs(long windowSecs) {
+        if (windowSecs > 0) offsetIntervalHistorical = windowSecs;
+    }
+
     public int getMonth() {
         return month;
     }
@@ -133,6 +167,52 @@ public class OffsetRecord {
         return entityTypeCount.get();
     }
         
+    public void setUploadPipelineSize(long workers, long queueSize) {
+        uploadWorkers.set(workers);
+        uploadQueueSize.set(queueSize);
+    }
+
+    public long getUploadWorkers() {
+        return uploadWorkers.get();
+    }
+
+    public long getUploadQueueSize() {
+        return uploadQueueSize.get();
+    }
+
+    public void setUploadQueueDepth(long depth) {
+        uploadQueueDepth.set(depth);
+    }
+
+    public long getUploadQueueDepth() {
+        return uploadQueueDepth.get();
+    }
+
+    public long setUploadWorkersBusy(long count) {
+        return uploadWorkersBusy.addAndGet(count);
+    }
+
+    public long getUploadWorkersBusy() {
+        return uploadWorkersBusy.get();
+    }
+
+    public void setBackfillPartitions(long total, long done) {
+        backfillPartitions.set(total);
+        backfillPartitionsDone.set(done);
+    }
+
+    public long setBackfillPartitionDone() {
+        return backfillPartitionsDone.incrementAndGet();
+    }
+
+    public long getBackfillPartitions() {
+        return backfillPartitions.get();
+    }
+
+    public long getBackfillPartitionsDone() {
+        return backfillPartitionsDone.get();
+    }
+
     public void setRate(long count) {
         if (count == 0) return;
         rate.set(count);
@@ -154,6 +234,17 @@ public class OffsetRecord {
         } catch(Exception e) {}
     }
         
+    // Next window {startTimeSecs, endTimeSecs, year, month} after a window with data ending at lastEndTimeSecs,
+    // same as set by updateOffsetFile. Returns null if the next window is not a complete historical window.
+    public long[] predictNextWindow(long lastEndTimeSecs) {
+        DateUtil du = new DateUtil(lastEndTimeSecs * 1000);
+        long nextEndTimeSecs = du.getTimeSecs() + offsetIntervalHistorical;
+        if (nextEndTimeSecs > System.currentTimeMillis() / 1000) {
+            return null;
+        }
+        return new long[] {du.getTimeSecs(), nextEndTimeSecs, du.getYear(), du.getMonth()};
+    }
+
     public long getWaitTimeMilli(int waitFlag, long cycleStartTimeMillis) {
         long waitTime = 100;
         if (waitFlag == 1) {
@@ -214,6 +305,63 @@ public class OffsetRecord {
         return retval;
     }
 
+    // Move offset to the specified date
+    public int setOffsetDate(String dateStr, int status) {
+        return updateOffsetByDate(dateStr, status);
+    }
+
+    // Move offset to the specified time
+    public int setOffsetTime(long timeSecs, int status) {
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        return updateOffsetByDate(df.format(new Date(timeSecs * 1000)), status);
+    }
+
+    // Live tail high-water mark (t_stamp, tagid), saved in the offset file. Offset is moved to offsetTimeSecs.
+    public int setLiveWatermark(long tStamp, long tagId, long offsetTimeSecs) {
+        liveWatermarkTStamp = tStamp;
+        liveWatermarkTagId = tagId;
+        return setOffsetTime(offsetTimeSecs, Constants.EXTRACT_STATUS_TABLE_WITH_DATA);
+    }
+
+    // Forget the live tail watermark, extraction goes back to windows from the current offset
+    public void clearLiveWatermark() {
+        liveWatermarkTStamp = -1;
+        liveWatermarkTagId = 0;
+    }
+
+    public long getLiveWatermarkTStamp() {
+        return liveWatermarkTStamp;
+    }
+
+    public long getLiveWatermarkTagId() {
+        return liveWatermarkTagId;
+    }
+
+    // Last extracted alarm id in alarm id extraction mode, saved in the offset file. -1 if not known.
+    // Offset is moved to the event time of the alarm.
+    public int setLastAlarmId(long alarmId, long eventTimeSecs) {
+        lastAlarmId = alarmId;
+        return setOffsetTime(eventTimeSecs, Constants.EXTRACT_STATUS_TABLE_WITH_DATA);
+    }
+
+    public long getLastAlarmId() {
+        return lastAlarmId;
+    }
+
+    // Estimated number of rows to extract after the offset, and time to extract them. -1 if not known.
+    public void setBacklog(long rows, long etaSecs) {
+        backlogRows.set(rows);
+        backlogEtaSecs.set(etaSecs);
+    }
+
+    public long getBacklogRows() {
+        return backlogRows.get();
+    }
+
+    public long getBacklogEtaSecs() {
+        return backlogEtaSecs.get();
+    }
+
     private void readOffsetFile() {
         int createFile = 0;
         JSONObject ofrec = null;
@@ -237,6 +385,12 @@ public class OffsetRecord {
                 processedCount.set(ofrec.getInt("processed"));
                 uploadedCount.set(ofrec.getInt("uploaded"));
                 rate.set(ofrec.getInt("rate"));
+                if (adaptiveWindow == 1) {
+                    offsetIntervalHistorical = ofrec.optLong("windowSecs", offsetIntervalHistorical);
+                }
+                liveWatermarkTStamp = ofrec.optLong("watermarkTStamp", -1);
+                liveWatermarkTagId = ofrec.optLong("watermarkTagId", 0);
+                lastAlarmId = ofrec.optLong("lastAlarmId", -1);
             } else {
                 createFile = 1;
             }
@@ -286,6 +440,14 @@ public class OffsetRecord {
         ofrec.put("processed", processedCount.get());
         ofrec.put("uploaded", uploadedCount.get());
         ofrec.put("rate", rate.get());
+        ofrec.put("windowSecs", offsetIntervalHistorical);
+        if (liveWatermarkTStamp >= 0) {
+            ofrec.put("watermarkTStamp", liveWatermarkTStamp);
+            ofrec.put("watermarkTagId", liveWatermarkTagId);
+        }
+        if (lastAlarmId >= 0) {
+            ofrec.put("lastAlarmId", lastAlarmId);
+        }
         writeOffsetFile(ofrec.toString());
         return retval;
     }
@@ -73,28 +73,30 @@ public class ParseTagname {
 
     }
 
+    // check if tagName is in discard list
+    public boolean isDiscarded(String tagName) {
+        for (Pattern discardPattern: discardPatterns) {
+            Matcher md = discardPattern.matcher(tagName);
+            if (md.matches() == true) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public String getType(String tagName) {
         int index = 0;
         String type = "";
 
+        if (discardTagMapCount > 0 && isDiscarded(tagName)) {
+            logger.info("======> Tag discarded : " + tagName);
+            return type;
+        }
+
         for (Pattern pattern: patterns) {
             Matcher m = pattern.matcher(tagName);
             boolean matches = m.matches();
             if (matches == true) {
-                // check if tagName is in discard list
-                int discard = 0;
-                if (discardTagMapCount > 0) {
-                    for (Pattern discardPattern: discardPatterns) {
-                        Matcher md = discardPattern.matcher(tagName);
-                        boolean mdmatches = md.matches();
-                        if (mdmatches == true) {
-                            logger.info("======> Tag discarded : " + tagName);
-                            discard = 1;
-                            break;
-                        }
-                    }
-                }
-                if (discard == 1) continue;
                 type = entityTypes.get(index);
                 // System.out.println("tagName:" + tagName +"   Type: " + type);
                 break;
@@ -0,0 +1,182 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+
+// Backfill scheduler for device data. Monthly partition tables (sqlt_data_1_YYYY_MM) between
+// the offset month and the current month are extracted in parallel, each partition with its
+// own progress record. Once every partition is caught up, connector offset is moved to the
+// start of the current month and normal live processing continues.
+// With partition planner, partition tables of all drivers in the partition catalog are backfilled.
+
+public class PartitionBackfill {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private Config config;
+    private OffsetRecord offsetRecord;
+    private UploadPipeline pipeline;
+    private PartitionPlanner partitionPlanner;
+    private int backfillPartitions = 1;
+    private long windowSecs;
+    private WindowController windowController;
+
+    public PartitionBackfill(Config config, OffsetRecord offsetRecord, UploadPipeline pipeline, PartitionPlanner partitionPlanner) {
+        if (config == null || offsetRecord == null || pipeline == null) {
+            throw new NullPointerException("config/offsetRecord/pipeline parameter cannot be null");
+        }
+
+        this.config = config;
+        this.offsetRecord = offsetRecord;
+        this.pipeline = pipeline;
+        this.partitionPlanner = partitionPlanner;
+        this.backfillPartitions = config.getBackfillPartitions();
+        this.windowSecs = config.getFetchIntervalHistorical();
+        this.windowController = new WindowController(config);
+    }
+
+    // Check if offset is in a month partition before the current month
+    public static boolean isNeeded(OffsetRecord offsetRecord) {
+        DateUtil duc = new DateUtil(System.currentTimeMillis());
+        int year = offsetRecord.getYear();
+        int month = offsetRecord.getMonth();
+        return (year < duc.getYear() || (year == duc.getYear() && month < duc.getMonth()));
+    }
+
+    // Returns true if all partitions are caught up and offset is moved to current month
+    public boolean run() throws Exception {
+        DateUtil duc = new DateUtil(System.currentTimeMillis());
+        int curYear = duc.getYear();
+        int curMonth = duc.getMonth();
+
+        List<PartitionOffset> partitions = new ArrayList<PartitionOffset>();
+        long offsetStartSecs = offsetRecord.getStartTimeSecs();
+        int year = offsetRecord.getYear();
+        int month = offsetRecord.getMonth();
+        if (partitionPlanner != null && partitionPlanner.hasPlan()) {
+            // partition tables from partition catalog, up to the start of the current month
+            long curMonthStartSecs = getMonthStartSecs(curYear, curMonth);
+            for (PartitionPlanner.Partition pp : partitionPlanner.getPartitions(offsetStartSecs * 1000, curMonthStartSecs * 1000)) {
+                long startSecs = Math.max(offsetStartSecs, pp.getStartMilli() / 1000);
+                long endSecs = Math.min(curMonthStartSecs, pp.getEndMilli() / 1000);
+                partitions.add(new PartitionOffset(config, pp.getTableName(), startSecs, endSecs));
+            }
+            year = curYear;
+            month = curMonth;
+        }
+        while (year < curYear || (year == curYear && month < curMonth)) {
+            int nextYear = year;
+            int nextMonth = month + 1;
+            if (nextMonth > 12) {
+                nextMonth = 1;
+                nextYear += 1;
+            }
+            long monthStartSecs = getMonthStartSecs(year, month);
+            long monthEndSecs = getMonthStartSecs(nextYear, nextMonth);
+            long startSecs = Math.max(offsetStartSecs, monthStartSecs);
+            partitions.add(new PartitionOffset(config, year, month, startSecs, monthEndSecs));
+            year = nextYear;
+            month = nextMonth;
+        }
+
+        int doneCount = 0;
+        for (PartitionOffset p : partitions) {
+            if (p.isDone()) doneCount += 1;
+        }
+        offsetRecord.setBackfillPartitions(partitions.size(), doneCount);
+        logger.info(String.format("Partition backfill: partitions=%d done=%d threads=%d", partitions.size(), doneCount, backfillPartitions));
+
+        ExecutorService pool = Executors.newFixedThreadPool(backfillPartitions);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        try {
+            for (final PartitionOffset p : partitions) {
+                if (p.isDone()) continue;
+                results.add(pool.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        return backfillPartition(p);
+                    }
+                }));
+            }
+
+            boolean caughtUp = true;
+            for (Future<Boolean> result : results) {
+                try {
+                    if (!result.get()) caughtUp = false;
+                } catch (ExecutionException e) {
+                    logger.log(Level.INFO, e.getMessage(), e);
+                    caughtUp = false;
+                }
+            }
+            if (!caughtUp) return false;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Merge into live processing: move connector offset to current month partition
+        String curMonthDateStr = String.format("%04d-%02d-01 00:00:00", curYear, curMonth);
+        offsetRecord.setOffsetDate(curMonthDateStr, Constants.EXTRACT_STATUS_TABLE_WITH_DATA);
+        for (PartitionOffset p : partitions) {
+            p.deleteOffsetFile();
+        }
+        logger.info("Partition backfill is complete. Continue from " + curMonthDateStr);
+        return true;
+    }
+
+    // Extract one partition, window by window, moving its progress record after each window is uploaded
+    private boolean backfillPartition(PartitionOffset p) throws Exception {
+        UploadPipeline.Tracker tracker = new UploadPipeline.Tracker();
+        logger.info(String.format("Backfill partition: year=%d month=%d table=%s startTime=%d endTime=%d",
+            p.getYear(), p.getMonth(), p.getTableName(), p.getStartTimeSecs(), p.getEndTimeSecs()));
+
+        while (!p.isDone()) {
+            if (config.getUpdateFlag() == 1) return false;
+
+            long startSecs = p.getStartTimeSecs();
+            long partitionWindowSecs = windowSecs;
+            if (windowController.isEnabled() && p.getWindowSecs() > 0) partitionWindowSecs = p.getWindowSecs();
+            long endSecs = Math.min(startSecs + partitionWindowSecs, p.getEndTimeSecs());
+            long rowCount = DBConnector.extractTable(pipeline, tracker, startSecs * 1000, endSecs * 1000, p.getYear(), p.getMonth(), p.getTableName());
+            if (rowCount == Constants.EXTRACT_RESULT_NO_TABLE) {
+                logger.info(String.format("Backfill partition: no table for year=%d month=%d table=%s", p.getYear(), p.getMonth(), p.getTableName()));
+                p.setDone();
+                break;
+            }
+            if (rowCount == Constants.EXTRACT_RESULT_FAILED) {
+                Thread.sleep(5000);
+                continue;
+            }
+            pipeline.waitForUploads(tracker);
+            if (windowController.isEnabled()) {
+                p.setWindowSecs(windowController.getNextWindowSecs(endSecs - startSecs, rowCount));
+            }
+            p.update(endSecs, rowCount);
+        }
+
+        offsetRecord.setBackfillPartitionDone();
+        logger.info(String.format("Backfill partition is complete: year=%d month=%d table=%s processed=%d", p.getYear(), p.getMonth(), p.getTableName(), p.getProcessed()));
+        return true;
+    }
+
+    private static long getMonthStartSecs(int year, int month) {
+        DateUtil du = new DateUtil(String.format("%04d-%02d-01 00:00:00", year, month));
+        return du.getTimeSecs();
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.nio.file.*;
+import java.util.logging.*;
+import java.io.File;
+import java.io.FileWriter;
+import org.json.JSONObject;
+
+
+// Backfill progress record of one monthly partition table. Stored in its own offset file,
+// next to the connector offset file.
+
+public class PartitionOffset {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private String offsetFile;
+    private String tableName = null;
+    private int year;
+    private int month;
+    private long startTimeSecs;
+    private long endTimeSecs;
+    private int done = 0;
+    private long processed = 0;
+    private long windowSecs = 0;
+
+    public PartitionOffset(Config config, int year, int month, long startTimeSecs, long endTimeSecs) {
+        this.year = year;
+        this.month = month;
+        this.startTimeSecs = startTimeSecs;
+        this.endTimeSecs = endTimeSecs;
+
+        String dataDir = config.getDataDir();
+        String etype = config.getClientSite() + "_" + config.getConnectorTypeStr();
+        String partition = String.format("%s_%04d_%02d", etype, year, month);
+        if (dataDir.equals("")) {
+            offsetFile = partition + ".offset";
+        } else {
+            offsetFile = dataDir + "/volume/data/" + partition + ".offset";
+        }
+
+        readOffsetFile();
+    }
+
+    // Progress record of a partition table from partition catalog
+    public PartitionOffset(Config config, String tableName, long startTimeSecs, long endTimeSecs) {
+        this.tableName = tableName;
+        this.startTimeSecs = startTimeSecs;
+        this.endTimeSecs = endTimeSecs;
+
+        String dataDir = config.getDataDir();
+        String partition = config.getClientSite() + "_" + config.getConnectorTypeStr() + "_" + tableName;
+        if (dataDir.equals("")) {
+            offsetFile = partition + ".offset";
+        } else {
+            offsetFile = dataDir + "/volume/data/" + partition + ".offset";
+        }
+
+        readOffsetFile();
+    }
+
+    // Partition table name, null if table is derived from year and month
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    public long getStartTimeSecs() {
+        return startTimeSecs;
+    }
+
+    public long getEndTimeSecs() {
+        return endTimeSecs;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    // Window size chosen by adaptive window controller for this partition, 0 if not set
+    public long getWindowSecs() {
+        return windowSecs;
+    }
+
+    public void setWindowSecs(long windowSecs) {
+        this.windowSecs = windowSecs;
+    }
+
+    public boolean isDone() {
+        return done == 1 || startTimeSecs >= endTimeSecs;
+    }
+
+    // Extracted rows till nextStartTimeSecs are uploaded
+    public void update(long nextStartTimeSecs, long rowCount) {
+        startTimeSecs = nextStartTimeSecs;
+        processed += rowCount;
+        if (startTimeSecs >= endTimeSecs) {
+            done = 1;
+        }
+        writeOffsetFile();
+    }
+
+    public void setDone() {
+        done = 1;
+        writeOffsetFile();
+    }
+
+    public void deleteOffsetFile() {
+        try {
+            File f = new File(offsetFile);
+            f.delete();
+        } catch(Exception e) {}
+    }
+
+    private void readOffsetFile() {
+        try {
+            File f = new File(offsetFile);
+            if (!f.exists()) return;
+            String offsetRecordStr = new String (Files.readAllBytes(Paths.get(offsetFile)));
+            JSONObject ofrec = new JSONObject(offsetRecordStr);
+            if (ofrec.optInt("year", 0) == year && ofrec.optInt("month", 0) == month &&
+                    ofrec.optString("table", "").equals(tableName == null ? "" : tableName)) {
+                startTimeSecs = ofrec.getLong("startTimeSecs");
+                done = ofrec.optInt("done", 0);
+                processed = ofrec.optLong("processed", 0);
+                windowSecs = ofrec.optLong("windowSecs", 0);
+                logger.info(String.format("Resume partition backfill: year=%d month=%d startTime=%d", year, month, startTimeSecs));
+            }
+        } catch (Exception e) {
+            logger.log(Level.INFO, "Failed to read partition offset file: ", e);
+        }
+    }
+
+    private void writeOffsetFile() {
+        JSONObject ofrec = new JSONObject();
+        ofrec.put("year", year);
+        ofrec.put("month", month);
+        if (tableName != null) ofrec.put("table", tableName);
+        ofrec.put("startTimeSecs", startTimeSecs);
+        ofrec.put("endTimeSecs", endTimeSecs);
+        ofrec.put("done", done);
+        ofrec.put("processed", processed);
+        ofrec.put("windowSecs", windowSecs);
+        try {
+            FileWriter fw = new FileWriter(offsetFile);
+            fw.write(ofrec.toString());
+            fw.flush();
+            fw.close();
+        } catch (Exception ex) {
+            logger.log(Level.INFO, "Failed to update partition offset file: ", ex);
+        }
+    }
+
+}
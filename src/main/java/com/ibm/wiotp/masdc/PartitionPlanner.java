@@ -0,0 +1,195 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.*;
+
+
+// Extraction plan from Ignition partition catalog (sqlth_partitions). Partition tables of all
+// driver ids are read with their start and end times, at startup and then every refresh interval.
+// Extraction windows are mapped to the partition tables they overlap, ranges without partitions
+// are skipped, and the backlog (rows after the current offset) is estimated from table statistics.
+
+public class PartitionPlanner {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private static final String PARTITIONS_SQL = "SELECT pname, drvid, start_time, end_time FROM sqlth_partitions ORDER BY start_time, drvid";
+    private static final String MYSQL_TABLE_ROWS_SQL = "SELECT table_rows FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?";
+    private static final String MSSQL_TABLE_ROWS_SQL = "SELECT SUM(p.rows) FROM sys.partitions p JOIN sys.tables t ON p.object_id = t.object_id " +
+        "WHERE t.name = ? AND p.index_id IN (0, 1)";
+
+    private Config config;
+    private volatile List<Partition> partitions = new ArrayList<Partition>();
+    private volatile long lastRefreshMilli = 0;
+    private long refreshIntervalMilli;
+
+    public PartitionPlanner(Config config) {
+        this.config = config;
+        this.refreshIntervalMilli = config.getPartitionPlanRefresh() * 1000L;
+    }
+
+    // Partition table of a driver
+    public static class Partition {
+        private String tableName;
+        private int driverId;
+        private long startMilli;
+        private long endMilli;
+        private long rows = -1;
+
+        Partition(String tableName, int driverId, long startMilli, long endMilli) {
+            this.tableName = tableName;
+            this.driverId = driverId;
+            this.startMilli = startMilli;
+            this.endMilli = endMilli;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public int getDriverId() {
+            return driverId;
+        }
+
+        public long getStartMilli() {
+            return startMilli;
+        }
+
+        public long getEndMilli() {
+            return endMilli;
+        }
+
+        // Estimated number of rows from table statistics, -1 if not known
+        public long getRows() {
+            return rows;
+        }
+    }
+
+    // True if partition catalog is read, and plan can be used
+    public boolean hasPlan() {
+        return partitions.size() > 0;
+    }
+
+    public List<Partition> getPartitions() {
+        return partitions;
+    }
+
+    // Replace the plan, partitions are ordered by start time
+    void setPartitions(List<Partition> plan) {
+        partitions = plan;
+    }
+
+    // Partitions overlapping the time range [startMilli, endMilli)
+    public List<Partition> getPartitions(long startMilli, long endMilli) {
+        List<Partition> result = new ArrayList<Partition>();
+        for (Partition p : partitions) {
+            if (p.startMilli < endMilli && p.endMilli > startMilli) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    // Start time of the first partition that has data at or after timeMilli, -1 if there is none
+    public long getNextDataMilli(long timeMilli) {
+        long next = -1;
+        for (Partition p : partitions) {
+            if (p.endMilli <= timeMilli) continue;
+            long start = Math.max(p.startMilli, timeMilli);
+            if (next == -1 || start < next) next = start;
+        }
+        return next;
+    }
+
+    // Read partition catalog again in the next refresh
+    public void invalidate() {
+        lastRefreshMilli = 0;
+    }
+
+    // Refresh plan if refresh interval has passed since the last refresh.
+    // Returns true if plan is refreshed.
+    public boolean refreshIfDue(OffsetRecord offsetRecord) {
+        long now = System.currentTimeMillis();
+        if (lastRefreshMilli > 0 && (now - lastRefreshMilli) < refreshIntervalMilli) return false;
+        refresh(offsetRecord);
+        return true;
+    }
+
+    // Read partition catalog and table statistics, and update backlog estimate
+    public synchronized void refresh(OffsetRecord offsetRecord) {
+        lastRefreshMilli = System.currentTimeMillis();
+        SourceConnectionPool pool = SourceConnectionPool.getInstance(config);
+        Connection conn = null;
+        boolean broken = false;
+        List<Partition> plan = new ArrayList<Partition>();
+        try {
+            conn = pool.getConnection();
+            PreparedStatement stmt = pool.prepareStatement(conn, PARTITIONS_SQL);
+            ResultSet rs = stmt.executeQuery();
+            try {
+                while (rs.next()) {
+                    plan.add(new Partition(rs.getString(1), rs.getInt(2), rs.getLong(3), rs.getLong(4)));
+                }
+            } finally {
+                rs.close();
+            }
+
+            String rowsSql = MYSQL_TABLE_ROWS_SQL;
+            if (config.getIgnitionDBType() == Constants.DB_SOURCE_TYPE_MSSQL) {
+                rowsSql = MSSQL_TABLE_ROWS_SQL;
+            }
+            stmt = pool.prepareStatement(conn, rowsSql);
+            for (Partition p : plan) {
+                stmt.setString(1, p.tableName);
+                rs = stmt.executeQuery();
+                try {
+                    if (rs.next()) p.rows = rs.getLong(1);
+                } finally {
+                    rs.close();
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.INFO, "Failed to read partition catalog: " + e.getMessage());
+            broken = true;
+        } finally {
+            if (conn != null) pool.releaseConnection(conn, broken);
+        }
+
+        if (plan.size() == 0) return;
+        setPartitions(plan);
+        logger.info(String.format("Partition plan refreshed: partitions=%d", plan.size()));
+        updateBacklog(offsetRecord);
+    }
+
+    // Estimated rows after the current offset, and time to extract them at the current rate
+    public void updateBacklog(OffsetRecord offsetRecord) {
+        long offsetMilli = offsetRecord.getStartTimeSecs() * 1000;
+        long backlogRows = 0;
+        for (Partition p : partitions) {
+            if (p.rows <= 0 || p.endMilli <= offsetMilli) continue;
+            if (p.startMilli >= offsetMilli || p.endMilli <= p.startMilli) {
+                backlogRows += p.rows;
+            } else {
+                backlogRows += (long) (p.rows * ((double) (p.endMilli - offsetMilli) / (p.endMilli - p.startMilli)));
+            }
+        }
+        long rate = offsetRecord.getRate();
+        long etaSecs = -1;
+        if (rate > 0) etaSecs = backlogRows / rate;
+        offsetRecord.setBacklog(backlogRows, etaSecs);
+    }
+
+}
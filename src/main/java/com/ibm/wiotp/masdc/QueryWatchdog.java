@@ -0,0 +1,138 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+// Cancels source queries that run longer than the query timeout. Statement.setQueryTimeout only
+// limits execution of the query, the watchdog also covers reading of the result set. Deadline is
+// paused while extracted rows are handed to the upload pipeline: the remaining time is kept on pause
+// and restored on resume, so slow uploads are not counted, but the total time of the query is.
+
+public class QueryWatchdog {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private static Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private static ScheduledExecutorService scheduler = null;
+    private static AtomicLong timeoutCount = new AtomicLong(0);
+
+    // Watched statement
+    public static class Watch {
+        private Statement stmt;
+        private long timeoutMilli;
+        private volatile long deadlineMilli;
+        private long remainingMilli = -1;
+        private volatile boolean cancelled = false;
+
+        Watch(Statement stmt, long timeoutMilli, long nowMilli) {
+            this.stmt = stmt;
+            this.timeoutMilli = timeoutMilli;
+            this.deadlineMilli = nowMilli + timeoutMilli;
+        }
+
+        // Stop the deadline, e.g. while waiting for the upload pipeline
+        public void pause() {
+            pause(System.currentTimeMillis());
+        }
+
+        // Restart the deadline with the time left when it was paused
+        public void resume() {
+            resume(System.currentTimeMillis());
+        }
+
+        synchronized void pause(long nowMilli) {
+            if (remainingMilli >= 0) return;
+            remainingMilli = Math.max(0, deadlineMilli - nowMilli);
+            deadlineMilli = Long.MAX_VALUE;
+        }
+
+        synchronized void resume(long nowMilli) {
+            if (remainingMilli < 0) return;
+            deadlineMilli = nowMilli + remainingMilli;
+            remainingMilli = -1;
+        }
+
+        long getDeadlineMilli() {
+            return deadlineMilli;
+        }
+
+        // Query was cancelled by the watchdog
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void close() {
+            watches.remove(this);
+        }
+
+        private void check(long nowMilli) {
+            if (cancelled || nowMilli < deadlineMilli) return;
+            cancelled = true;
+            watches.remove(this);
+            timeoutCount.incrementAndGet();
+            logger.info(String.format("Query timeout after %d seconds. Cancel query.", timeoutMilli / 1000));
+            try {
+                stmt.cancel();
+            } catch (Exception e) {
+                logger.log(Level.INFO, "Failed to cancel query: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    // Watch a statement before it is executed. Returns null if timeout is 0 (no timeout).
+    // Every watch must be closed when the statement is done.
+    public static Watch watch(Statement stmt, long timeoutSecs) {
+        if (timeoutSecs <= 0) return null;
+        startScheduler();
+        Watch watch = new Watch(stmt, timeoutSecs * 1000, System.currentTimeMillis());
+        watches.add(watch);
+        return watch;
+    }
+
+    // Count a query timeout reported by the driver
+    public static void countTimeout() {
+        timeoutCount.incrementAndGet();
+    }
+
+    public static long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    private static synchronized void startScheduler() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "query-watchdog");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                long nowMilli = System.currentTimeMillis();
+                for (Watch watch : watches) {
+                    watch.check(nowMilli);
+                }
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+}
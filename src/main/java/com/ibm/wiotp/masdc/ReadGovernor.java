@@ -0,0 +1,176 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+
+// Source read governor. Limits rows read per second from the source database (token bucket)
+// and number of extraction queries running at the same time. Limits can be changed by
+// time of day profiles, e.g. to read at full speed at night and slowly during shifts.
+// A limit of 0 means unlimited.
+
+public class ReadGovernor {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    // Time of day profile, from startMinute (inclusive) to endMinute (exclusive) minute of the day.
+    // Profile wraps around midnight if endMinute is before startMinute.
+    static class Profile {
+        int startMinute;
+        int endMinute;
+        long maxRowsPerSec;
+        int maxQueries;
+
+        Profile(int startMinute, int endMinute, long maxRowsPerSec, int maxQueries) {
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+            this.maxRowsPerSec = maxRowsPerSec;
+            this.maxQueries = maxQueries;
+        }
+
+        boolean contains(int minute) {
+            if (startMinute <= endMinute) {
+                return minute >= startMinute && minute < endMinute;
+            }
+            return minute >= startMinute || minute < endMinute;
+        }
+    }
+
+    private long defaultMaxRowsPerSec;
+    private int defaultMaxQueries;
+    private List<Profile> profiles = new ArrayList<Profile>();
+
+    private double tokens = 0;
+    private long lastRefillNanos = -1;
+    private long lastRate = -1;
+    private int activeQueries = 0;
+
+    public ReadGovernor(Config config) {
+        this(config.getReadMaxRowsPerSec(), config.getReadMaxQueries());
+        JSONArray profileArray = config.getReadProfiles();
+        if (profileArray != null) {
+            for (int i = 0; i < profileArray.length(); i++) {
+                JSONObject p = profileArray.getJSONObject(i);
+                addProfile(getMinuteOfDay(p.getString("start")), getMinuteOfDay(p.getString("end")),
+                    p.optLong("maxRowsPerSec", defaultMaxRowsPerSec), p.optInt("maxConcurrentQueries", defaultMaxQueries));
+            }
+        }
+    }
+
+    public ReadGovernor(long maxRowsPerSec, int maxQueries) {
+        this.defaultMaxRowsPerSec = maxRowsPerSec;
+        this.defaultMaxQueries = maxQueries;
+    }
+
+    public void addProfile(int startMinute, int endMinute, long maxRowsPerSec, int maxQueries) {
+        profiles.add(new Profile(startMinute, endMinute, maxRowsPerSec, maxQueries));
+    }
+
+    // Minute of the day of a HH:MM time string
+    public static int getMinuteOfDay(String time) {
+        String[] parts = time.trim().split(":");
+        int hour = Integer.parseInt(parts[0]);
+        int minute = (parts.length > 1) ? Integer.parseInt(parts[1]) : 0;
+        if (hour < 0 || hour > 24 || minute < 0 || minute > 59) {
+            throw new IllegalArgumentException("Invalid time of day: " + time);
+        }
+        return (hour * 60 + minute) % 1440;
+    }
+
+    // First matching profile, or null for default limits
+    Profile getProfile(int minute) {
+        for (Profile p : profiles) {
+            if (p.contains(minute)) return p;
+        }
+        return null;
+    }
+
+    long getMaxRowsPerSec(int minute) {
+        Profile p = getProfile(minute);
+        return (p != null) ? p.maxRowsPerSec : defaultMaxRowsPerSec;
+    }
+
+    int getMaxQueries(int minute) {
+        Profile p = getProfile(minute);
+        return (p != null) ? p.maxQueries : defaultMaxQueries;
+    }
+
+    private static int getCurrentMinute() {
+        LocalTime now = LocalTime.now();
+        return now.getHour() * 60 + now.getMinute();
+    }
+
+    // Wait until a query slot is free. Every acquireQuery must be followed by releaseQuery.
+    public synchronized void acquireQuery() throws InterruptedException {
+        while (true) {
+            int maxQueries = getMaxQueries(getCurrentMinute());
+            if (maxQueries <= 0 || activeQueries < maxQueries) break;
+            // limit may change with the time of day profile
+            wait(1000);
+        }
+        activeQueries++;
+    }
+
+    public synchronized void releaseQuery() {
+        if (activeQueries > 0) activeQueries--;
+        notifyAll();
+    }
+
+    // Take tokens for rows read from the source, and wait if the rate limit is exceeded
+    public void acquireRows(int rows) throws InterruptedException {
+        acquireRows(rows, null);
+    }
+
+    // Same as acquireRows, the query watch (if not null) is paused while waiting, so the
+    // rate limit is not counted in the query timeout
+    public void acquireRows(int rows, QueryWatchdog.Watch watch) throws InterruptedException {
+        if (rows <= 0) return;
+        long waitNanos = reserve(rows, System.nanoTime(), getMaxRowsPerSec(getCurrentMinute()));
+        if (waitNanos > 0) {
+            logger.fine(String.format("Read governor: wait %d ms", waitNanos / 1000000));
+            if (watch != null) watch.pause();
+            try {
+                Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+            } finally {
+                if (watch != null) watch.resume();
+            }
+        }
+    }
+
+    // Take tokens for rows at time nowNanos, and return time to wait in nanoseconds.
+    // Bucket holds at most one second of rows. Tokens can go negative, the caller waits
+    // until the debt is refilled.
+    synchronized long reserve(int rows, long nowNanos, long maxRowsPerSec) {
+        if (maxRowsPerSec <= 0) {
+            lastRate = maxRowsPerSec;
+            lastRefillNanos = nowNanos;
+            return 0;
+        }
+        if (lastRefillNanos < 0 || lastRate != maxRowsPerSec) {
+            // start with a full bucket when limit is set or changed
+            tokens = maxRowsPerSec;
+        } else {
+            tokens += (double) (nowNanos - lastRefillNanos) * maxRowsPerSec / 1000000000L;
+            tokens = Math.min(tokens, maxRowsPerSec);
+        }
+        lastRate = maxRowsPerSec;
+        lastRefillNanos = nowNanos;
+        tokens -= rows;
+        if (tokens >= 0) return 0;
+        return (long) (-tokens * 1000000000L / maxRowsPerSec);
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+
+// Decodes rows of a source result set into a row batch. A handler per column is chosen once from
+// the result set metadata, by column name and SQL type, so each cell is read with a single typed
+// getter and no column name is compared per row. Tag id of the decoded row is kept for resolving
+// device id, type and event name. Tag path is read only on request, as it is needed only for
+// tags that are not interned yet.
+
+public class ResultSetDecoder {
+
+    // Column handlers
+    static final int SKIP = 0;
+    static final int LONG = 1;
+    static final int DOUBLE = 2;
+    static final int STRING = 3;
+    static final int DATE = 4;
+    static final int OBJECT = 5;
+    static final int TAGPATH = 6;
+    static final int TSTAMP = 7;
+    static final int EVENTTIME = 8;
+    static final int TAGID = 9;
+
+    private int[] handlers;
+    private int[] batchColumns;
+    private boolean isDevice;
+
+    // 1-based columns of tagid, tagpath and t_stamp, 0 if not in the result set
+    private int tagidColumn = 0;
+    private int tagpathColumn = 0;
+    private int tstampColumn = 0;
+
+    // tag id of the decoded row
+    private long tagId;
+
+    public ResultSetDecoder(ResultSetMetaData rsmd, int connectorType) throws SQLException {
+        int columnCount = rsmd.getColumnCount();
+        handlers = new int[columnCount];
+        batchColumns = new int[columnCount];
+        isDevice = (connectorType == Constants.CONNECTOR_DEVICE);
+        for (int i = 0; i < columnCount; i++) {
+            String colName = rsmd.getColumnName(i + 1).toLowerCase();
+            batchColumns[i] = getBatchColumn(colName, connectorType);
+            handlers[i] = getHandler(colName, rsmd.getColumnType(i + 1), batchColumns[i]);
+            if (handlers[i] == TAGID) tagidColumn = i + 1;
+            if (handlers[i] == TAGPATH) tagpathColumn = i + 1;
+            if (handlers[i] == TSTAMP) tstampColumn = i + 1;
+        }
+    }
+
+    // Row batch column of a source column, -1 if the column is not uploaded as is
+    static int getBatchColumn(String colName, int connectorType) {
+        if (colName.equals("eventtype")) {
+            return RowBatch.getColumn(connectorType, "ETYPE");
+        } else if (colName.equals("id")) {
+            return RowBatch.getColumn(connectorType, "ALARMID");
+        }
+        return RowBatch.getColumn(connectorType, colName);
+    }
+
+    // Handler of a source column
+    static int getHandler(String colName, int sqlType, int batchColumn) {
+        if (colName.equals("deviceid") || colName.equals("devicetype")) {
+            // device id and type are resolved from tag path
+            return SKIP;
+        } else if (colName.equals("tagpath")) {
+            return TAGPATH;
+        } else if (colName.equals("t_stamp")) {
+            return TSTAMP;
+        } else if (colName.equals("eventtime")) {
+            return EVENTTIME;
+        } else if (colName.equals("tagid")) {
+            return TAGID;
+        }
+        if (batchColumn < 0) {
+            return SKIP;
+        }
+
+        boolean isDate = (sqlType == Types.TIMESTAMP || sqlType == Types.DATE || sqlType == Types.TIME);
+        boolean isInteger = (sqlType == Types.BIGINT || sqlType == Types.INTEGER || sqlType == Types.SMALLINT
+            || sqlType == Types.TINYINT || sqlType == Types.BIT || sqlType == Types.BOOLEAN);
+        boolean isNumber = isInteger || sqlType == Types.DOUBLE || sqlType == Types.FLOAT || sqlType == Types.REAL
+            || sqlType == Types.DECIMAL || sqlType == Types.NUMERIC;
+
+        switch (RowBatch.getColumnType(batchColumn)) {
+            case RowBatch.TYPE_LONG:
+                if (isDate) return DATE;
+                if (isInteger) return LONG;
+                break;
+            case RowBatch.TYPE_DOUBLE:
+                if (isNumber) return DOUBLE;
+                break;
+            default:
+                if (!isDate) return STRING;
+                break;
+        }
+        // other types are converted by the row batch
+        return OBJECT;
+    }
+
+    public int getTagIdColumn() {
+        return tagidColumn;
+    }
+
+    public int getTagpathColumn() {
+        return tagpathColumn;
+    }
+
+    public int getTStampColumn() {
+        return tstampColumn;
+    }
+
+    // Tag path of the current row in lower case, empty if the result set has no tag path
+    public String getTagpath(ResultSet rs) throws SQLException {
+        if (tagpathColumn == 0) return "";
+        String tp = rs.getString(tagpathColumn);
+        return (tp != null) ? tp.toLowerCase() : "";
+    }
+
+    // Tag id of the decoded row, 0 if the result set has no tag id
+    public long getTagId() {
+        return tagId;
+    }
+
+    // Decode the current row of the result set into the last row of the batch
+    public void decode(ResultSet rs, RowBatch batch) throws SQLException {
+        tagId = 0;
+        for (int i = 0; i < handlers.length; i++) {
+            int col = i + 1;
+            switch (handlers[i]) {
+                case LONG:
+                    long lvalue = rs.getLong(col);
+                    if (!rs.wasNull()) batch.setLong(batchColumns[i], lvalue);
+                    break;
+                case DOUBLE:
+                    double dvalue = rs.getDouble(col);
+                    if (!rs.wasNull()) batch.setDouble(batchColumns[i], dvalue);
+                    break;
+                case STRING:
+                    batch.setString(batchColumns[i], rs.getString(col));
+                    break;
+                case DATE:
+                    Timestamp date = rs.getTimestamp(col);
+                    if (date != null) batch.setLong(batchColumns[i], date.getTime());
+                    break;
+                case OBJECT:
+                    batch.setObject(batchColumns[i], rs.getObject(col));
+                    break;
+                case TSTAMP:
+                    long tstamp = rs.getLong(col);
+                    if (!rs.wasNull()) batch.setLong(RowBatch.TIMESTAMP, tstamp);
+                    break;
+                case EVENTTIME:
+                    Timestamp eventtime = rs.getTimestamp(col);
+                    if (eventtime != null) batch.setLong(RowBatch.TIMESTAMP, eventtime.getTime());
+                    break;
+                case TAGID:
+                    tagId = rs.getLong(col);
+                    if (!rs.wasNull() && isDevice) batch.setLong(RowBatch.TAGID, tagId);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,336 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+// Columnar batch of extracted rows, in the column layout of the data lake tables.
+// Numbers and timestamps are held in primitive arrays, tag path, event name, device type and
+// device id in dictionary encoded columns, and other strings in string arrays. A null bitmap per
+// column marks values that are not set. Columns that are the same for all rows (event type,
+// format, logical interface id) are held once per batch. Rows are indexed by device type as they
+// are added, so each entity type is uploaded from its own row list. A batch is cleared and reused
+// once its rows are uploaded, keeping its capacity.
+
+public class RowBatch {
+
+    // Column types
+    static final int TYPE_LONG = 0;
+    static final int TYPE_DOUBLE = 1;
+    static final int TYPE_STRING = 2;
+    static final int TYPE_DICT = 3;
+
+    // Columns. TIMESTAMP is uploaded as RCV_TIMESTAMP_UTC and UPDATED_UTC.
+    public static final int TAG = 0;
+    public static final int DEVICETYPE = 1;
+    public static final int DEVICEID = 2;
+    public static final int TIMESTAMP = 3;
+    public static final int TAGID = 4;
+    public static final int INTVALUE = 5;
+    public static final int FLOATVALUE = 6;
+    public static final int STRINGVALUE = 7;
+    public static final int DATEVALUE = 8;
+    public static final int EVT_NAME = 9;
+    public static final int ALARMID = 10;
+    public static final int EVENTID = 11;
+    public static final int ACKBY = 12;
+    public static final int NAME = 13;
+    public static final int ETYPE = 14;
+    public static final int DISPLAYPATH = 15;
+    public static final int PRIORITY = 16;
+    public static final int VALUE = 17;
+
+    private static final String[] COLUMN_NAMES = {"TAG", "DEVICETYPE", "DEVICEID", "TIMESTAMP", "TAGID", "INTVALUE",
+        "FLOATVALUE", "STRINGVALUE", "DATEVALUE", "EVT_NAME", "ALARMID", "EVENTID", "ACKBY", "NAME", "ETYPE",
+        "DISPLAYPATH", "PRIORITY", "VALUE"};
+    private static final int[] COLUMN_TYPES = {TYPE_DICT, TYPE_DICT, TYPE_DICT, TYPE_LONG, TYPE_LONG, TYPE_LONG,
+        TYPE_DOUBLE, TYPE_STRING, TYPE_LONG, TYPE_DICT, TYPE_LONG, TYPE_STRING, TYPE_STRING, TYPE_STRING, TYPE_DOUBLE,
+        TYPE_STRING, TYPE_DOUBLE, TYPE_DOUBLE};
+    private static final int[] DEVICE_COLUMNS = {TAG, DEVICETYPE, DEVICEID, TIMESTAMP, TAGID, INTVALUE, FLOATVALUE,
+        STRINGVALUE, DATEVALUE, EVT_NAME};
+    private static final int[] ALARM_COLUMNS = {TAG, DEVICETYPE, DEVICEID, TIMESTAMP, ALARMID, EVENTID, ACKBY, NAME,
+        ETYPE, DISPLAYPATH, PRIORITY, VALUE};
+    private static final int NUM_COLUMNS = COLUMN_NAMES.length;
+
+    private int connectorType;
+    private String eventType;
+    private int[] columns;
+    private int capacity;
+    private int size = 0;
+
+    private long[][] longValues = new long[NUM_COLUMNS][];
+    private double[][] doubleValues = new double[NUM_COLUMNS][];
+    private String[][] stringValues = new String[NUM_COLUMNS][];
+    private int[][] dictCodes = new int[NUM_COLUMNS][];
+    private long[][] notNull = new long[NUM_COLUMNS][];
+
+    // dictionary of each dictionary encoded column
+    private List<Map<String, Integer>> dictIndex = new ArrayList<Map<String, Integer>>(NUM_COLUMNS);
+    private List<List<String>> dictValues = new ArrayList<List<String>>(NUM_COLUMNS);
+
+    // rows of each device type, by dictionary code of the DEVICETYPE column
+    private int[][] typeRows = new int[0][];
+    private int[] typeRowCounts = new int[0];
+
+    public RowBatch(int connectorType, String eventType, int capacity) {
+        this.connectorType = connectorType;
+        this.eventType = eventType;
+        this.columns = (connectorType == Constants.CONNECTOR_DEVICE) ? DEVICE_COLUMNS : ALARM_COLUMNS;
+        this.capacity = Math.max(16, capacity);
+        for (int i = 0; i < NUM_COLUMNS; i++) {
+            dictIndex.add(null);
+            dictValues.add(null);
+        }
+        for (int col : columns) {
+            switch (COLUMN_TYPES[col]) {
+                case TYPE_LONG:
+                    longValues[col] = new long[this.capacity];
+                    break;
+                case TYPE_DOUBLE:
+                    doubleValues[col] = new double[this.capacity];
+                    break;
+                case TYPE_STRING:
+                    stringValues[col] = new String[this.capacity];
+                    break;
+                default:
+                    dictCodes[col] = new int[this.capacity];
+                    dictIndex.set(col, new HashMap<String, Integer>());
+                    dictValues.set(col, new ArrayList<String>());
+                    break;
+            }
+            notNull[col] = new long[(this.capacity + 63) / 64];
+        }
+    }
+
+    public int getConnectorType() {
+        return connectorType;
+    }
+
+    // EVENTTYPE column value of all rows
+    public String getEventType() {
+        return eventType;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Column of a data lake or source column name, -1 if the batch has no such column
+    public int getColumn(String name) {
+        return getColumn(connectorType, name);
+    }
+
+    // Column of a data lake or source column name in batches of a connector type, -1 if there is no such column
+    public static int getColumn(int connectorType, String name) {
+        int[] cols = (connectorType == Constants.CONNECTOR_DEVICE) ? DEVICE_COLUMNS : ALARM_COLUMNS;
+        String upperName = name.toUpperCase();
+        for (int col : cols) {
+            if (COLUMN_NAMES[col].equals(upperName)) return col;
+        }
+        return -1;
+    }
+
+    static int getColumnType(int col) {
+        return COLUMN_TYPES[col];
+    }
+
+    // Add a row with all values null. Values of the row are set with the set methods.
+    public int addRow() {
+        if (size == capacity) {
+            grow();
+        }
+        int row = size++;
+        for (int col : columns) {
+            notNull[col][row >> 6] &= ~(1L << row);
+        }
+        return row;
+    }
+
+    // Remove all rows, keeping capacity
+    public void clear() {
+        for (int col : columns) {
+            if (stringValues[col] != null) {
+                Arrays.fill(stringValues[col], 0, size, null);
+            }
+            if (dictIndex.get(col) != null) {
+                dictIndex.get(col).clear();
+                dictValues.get(col).clear();
+            }
+        }
+        Arrays.fill(typeRowCounts, 0);
+        size = 0;
+    }
+
+    public void setLong(int col, long value) {
+        int row = size - 1;
+        longValues[col][row] = value;
+        setNotNull(col, row);
+    }
+
+    public void setDouble(int col, double value) {
+        int row = size - 1;
+        doubleValues[col][row] = value;
+        setNotNull(col, row);
+    }
+
+    // DEVICETYPE is set once per row, the row is added to the row list of the type
+    public void setString(int col, String value) {
+        int row = size - 1;
+        if (value == null) return;
+        if (COLUMN_TYPES[col] == TYPE_DICT) {
+            int code = getDictCode(col, value, true);
+            dictCodes[col][row] = code;
+            if (col == DEVICETYPE) {
+                addTypeRow(code, row);
+            }
+        } else {
+            stringValues[col][row] = value;
+        }
+        setNotNull(col, row);
+    }
+
+    // Set a value read from the source, converted to the column type. Null values are left unset.
+    public void setObject(int col, Object value) {
+        if (value == null) return;
+        switch (COLUMN_TYPES[col]) {
+            case TYPE_LONG:
+                if (value instanceof Number) {
+                    setLong(col, ((Number) value).longValue());
+                } else if (value instanceof java.util.Date) {
+                    setLong(col, ((java.util.Date) value).getTime());
+                } else if (value instanceof LocalDateTime) {
+                    setLong(col, Timestamp.valueOf((LocalDateTime) value).getTime());
+                } else {
+                    setLong(col, (long) Double.parseDouble(value.toString()));
+                }
+                break;
+            case TYPE_DOUBLE:
+                if (value instanceof Number) {
+                    setDouble(col, ((Number) value).doubleValue());
+                } else {
+                    setDouble(col, Double.parseDouble(value.toString()));
+                }
+                break;
+            default:
+                setString(col, value.toString());
+                break;
+        }
+    }
+
+    public boolean isNull(int col, int row) {
+        return (notNull[col][row >> 6] & (1L << row)) == 0;
+    }
+
+    public long getLong(int col, int row) {
+        return longValues[col][row];
+    }
+
+    public double getDouble(int col, int row) {
+        return doubleValues[col][row];
+    }
+
+    // String value of a string or dictionary column, null if not set
+    public String getString(int col, int row) {
+        if (isNull(col, row)) return null;
+        if (COLUMN_TYPES[col] == TYPE_DICT) {
+            return dictValues.get(col).get(dictCodes[col][row]);
+        }
+        return stringValues[col][row];
+    }
+
+    // Dictionary code of a value of a dictionary column in this batch, -1 if no row has the value
+    public int getDictCode(int col, String value) {
+        return getDictCode(col, value, false);
+    }
+
+    public int getDictCode(int col, int row) {
+        if (isNull(col, row)) return -1;
+        return dictCodes[col][row];
+    }
+
+    // Number of distinct values of a dictionary column
+    public int getDictSize(int col) {
+        return dictValues.get(col).size();
+    }
+
+    // Value of a dictionary code of a dictionary column
+    public String getDictValue(int col, int code) {
+        return dictValues.get(col).get(code);
+    }
+
+    // Rows of a device type, by dictionary code of the type. Only the first getTypeRowCount entries are set.
+    public int[] getTypeRows(int code) {
+        return typeRows[code];
+    }
+
+    public int getTypeRowCount(int code) {
+        if (code < 0 || code >= typeRowCounts.length) return 0;
+        return typeRowCounts[code];
+    }
+
+    private int getDictCode(int col, String value, boolean add) {
+        Integer code = dictIndex.get(col).get(value);
+        if (code == null) {
+            if (!add) return -1;
+            List<String> values = dictValues.get(col);
+            code = values.size();
+            values.add(value);
+            dictIndex.get(col).put(value, code);
+        }
+        return code;
+    }
+
+    private void setNotNull(int col, int row) {
+        notNull[col][row >> 6] |= (1L << row);
+    }
+
+    private void addTypeRow(int code, int row) {
+        if (code >= typeRows.length) {
+            int newLength = Math.max(code + 1, typeRows.length * 2);
+            typeRows = Arrays.copyOf(typeRows, newLength);
+            typeRowCounts = Arrays.copyOf(typeRowCounts, newLength);
+        }
+        int[] rows = typeRows[code];
+        int count = typeRowCounts[code];
+        if (rows == null) {
+            rows = new int[16];
+            typeRows[code] = rows;
+        } else if (count == rows.length) {
+            rows = Arrays.copyOf(rows, count * 2);
+            typeRows[code] = rows;
+        }
+        rows[count] = row;
+        typeRowCounts[code] = count + 1;
+    }
+
+    private void grow() {
+        int newCapacity = capacity * 2;
+        for (int col : columns) {
+            if (longValues[col] != null) longValues[col] = Arrays.copyOf(longValues[col], newCapacity);
+            if (doubleValues[col] != null) doubleValues[col] = Arrays.copyOf(doubleValues[col], newCapacity);
+            if (stringValues[col] != null) stringValues[col] = Arrays.copyOf(stringValues[col], newCapacity);
+            if (dictCodes[col] != null) dictCodes[col] = Arrays.copyOf(dictCodes[col], newCapacity);
+            notNull[col] = Arrays.copyOf(notNull[col], (newCapacity + 63) / 64);
+        }
+        capacity = newCapacity;
+    }
+
+}
@@ -52,6 +52,8 @@ public class SampleData {
      * @param cofiguredConnectorType    Device or Alarm connector.
      *                                  Valid values are device or alarm. 
      *                                  This is a required parameter.
+     * @param partition                 Data partition to export in YYYY_MM format.
+     *                                  This is an optional parameter, default is current month.
      */
     public static void main(String[] args) {
 
@@ -127,14 +129,26 @@ public class SampleData {
 
             DBConnector dbconn = new DBConnector(config, offsetRecord, tagpaths);
 
-            String tableName = "sqlt_data";
-            String csvFilePath = dataDir + "/sqlt_data_2021_05_01.csv";
+            // Data partition to export can be specified as YYYY_MM, default is current month
+            String partition = new SimpleDateFormat("yyyy_MM").format(new Date());
+            if (args.length > 1 && !args[1].isEmpty()) {
+                partition = args[1];
+                if (!partition.matches("\\d{4}_\\d{2}")) {
+                    logger.severe("Invalid data partition " + partition + ". Specify partition in YYYY_MM format.");
+                    System.exit(1);
+                }
+            }
+
+            String tableName = "sqlt_data_1_" + partition;
+            String csvFilePath = dataDir + "/" + tableName + ".csv";
             dbconn.extractRawData(tableName, csvFilePath);
 
             tableName = "sqlth_te";
             csvFilePath = dataDir + "/sqlth_te.csv";
             dbconn.extractRawData(tableName, csvFilePath);
 
+            SourceConnectionPool.getInstance(config).close();
+
         } catch (Exception ex) {
             logger.log(Level.INFO, ex.getMessage(), ex);
         }
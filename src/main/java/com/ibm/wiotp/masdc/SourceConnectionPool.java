@@ -0,0 +1,380 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+// Connection pool for SCADA historian (source) database. Shared by all extraction threads.
+// Idle connections are validated before reuse, connections are retired after max lifetime,
+// and connections borrowed longer than leak detection threshold are reported.
+// Each pooled connection keeps a small LRU cache of prepared extraction statements.
+
+public class SourceConnectionPool {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private static SourceConnectionPool instance = null;
+
+    private static class PooledConnection {
+        Connection conn;
+        long createdTime;
+        long lastUsedTime;
+        long borrowTime;
+        Exception borrowStack;
+        int leakReported = 0;
+        Map<String, PreparedStatement> statements;
+
+        PooledConnection(Connection conn, final int statementCacheSize) {
+            this.conn = conn;
+            this.createdTime = System.currentTimeMillis();
+            this.lastUsedTime = this.createdTime;
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= statementCacheSize) return false;
+                    try {
+                        eldest.getValue().close();
+                    } catch (Exception e) {}
+                    return true;
+                }
+            };
+        }
+    }
+
+    private int dbType;
+    private String dbUrl;
+    private String dbUser;
+    private String dbPass;
+    private int maxSize;
+    private long validationIntervalMillis;
+    private int validationTimeoutSecs;
+    private long maxLifetimeMillis;
+    private long leakDetectionMillis;
+    private long connectionTimeoutMillis;
+    private int statementCacheSize;
+
+    private final Deque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+    private final Map<Connection, PooledConnection> borrowed = new IdentityHashMap<Connection, PooledConnection>();
+    private int totalCount = 0;
+    private int closed = 0;
+    private ScheduledExecutorService housekeeper;
+
+    private AtomicLong createdCount = new AtomicLong(0);
+    private AtomicLong borrowCount = new AtomicLong(0);
+    private AtomicLong waitCount = new AtomicLong(0);
+    private AtomicLong validationFailureCount = new AtomicLong(0);
+    private AtomicLong retiredCount = new AtomicLong(0);
+    private AtomicLong leakCount = new AtomicLong(0);
+    private AtomicLong statementCacheHits = new AtomicLong(0);
+    private AtomicLong statementCacheMisses = new AtomicLong(0);
+
+    private SourceConnectionPool(Config config) {
+        dbType = config.getIgnitionDBType();
+        dbUrl = config.getIgnitionDBUrl();
+        dbUser = config.getIgnitionDBUser();
+        dbPass = config.getIgnitionDBPass();
+        maxSize = config.getSourcePoolMaxSize();
+        validationIntervalMillis = config.getSourcePoolValidationInterval() * 1000;
+        validationTimeoutSecs = config.getSourcePoolValidationTimeout();
+        maxLifetimeMillis = config.getSourcePoolMaxLifetime() * 1000;
+        leakDetectionMillis = config.getSourcePoolLeakDetectionThreshold() * 1000;
+        connectionTimeoutMillis = config.getSourcePoolConnectionTimeout() * 1000;
+        statementCacheSize = config.getSourcePoolStatementCacheSize();
+
+        logger.info(String.format("Source connection pool: maxSize=%d validationInterval=%d maxLifetime=%d leakDetection=%d",
+            maxSize, validationIntervalMillis/1000, maxLifetimeMillis/1000, leakDetectionMillis/1000));
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "source-pool-housekeeper");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        housekeeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                housekeep();
+            }
+        }, 30, 30, TimeUnit.SECONDS);
+    }
+
+    public static synchronized SourceConnectionPool getInstance(Config config) {
+        if (instance == null) {
+            instance = new SourceConnectionPool(config);
+        }
+        return instance;
+    }
+
+    // Returns pool instance if created, null otherwise
+    public static synchronized SourceConnectionPool getInstance() {
+        return instance;
+    }
+
+    // Borrow a connection. Waits up to connection timeout if all connections are in use.
+    public Connection getConnection() throws SQLException {
+        long deadline = System.currentTimeMillis() + connectionTimeoutMillis;
+        while (true) {
+            PooledConnection pc = null;
+            int create = 0;
+            synchronized (this) {
+                if (closed == 1) {
+                    throw new SQLException("Source connection pool is closed");
+                }
+                while (idle.isEmpty() && totalCount >= maxSize) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new SQLException(String.format("Timed out waiting for source connection. active=%d max=%d", borrowed.size(), maxSize));
+                    }
+                    waitCount.incrementAndGet();
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for source connection");
+                    }
+                }
+                if (!idle.isEmpty()) {
+                    pc = idle.pollLast();
+                } else {
+                    totalCount += 1;
+                    create = 1;
+                }
+            }
+
+            if (create == 1) {
+                try {
+                    pc = new PooledConnection(openConnection(), statementCacheSize);
+                    createdCount.incrementAndGet();
+                } catch (SQLException e) {
+                    synchronized (this) {
+                        totalCount -= 1;
+                        notifyAll();
+                    }
+                    throw e;
+                }
+            } else if (!checkConnection(pc)) {
+                discard(pc);
+                continue;
+            }
+
+            synchronized (this) {
+                pc.borrowTime = System.currentTimeMillis();
+                pc.leakReported = 0;
+                if (leakDetectionMillis > 0) {
+                    pc.borrowStack = new Exception("Source connection borrowed here");
+                }
+                borrowed.put(pc.conn, pc);
+            }
+            borrowCount.incrementAndGet();
+            return pc.conn;
+        }
+    }
+
+    // Returns cached prepared statement of a borrowed connection, prepares and caches it if
+    // not found. Cached statements must not be closed by the caller.
+    public PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+        PooledConnection pc = null;
+        synchronized (this) {
+            pc = borrowed.get(conn);
+        }
+        if (pc == null) {
+            return conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        }
+        PreparedStatement ps = pc.statements.get(sql);
+        if (ps != null && !ps.isClosed()) {
+            statementCacheHits.incrementAndGet();
+            return ps;
+        }
+        statementCacheMisses.incrementAndGet();
+        ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        pc.statements.put(sql, ps);
+        return ps;
+    }
+
+    // Return a borrowed connection to the pool
+    public void releaseConnection(Connection conn) {
+        releaseConnection(conn, false);
+    }
+
+    // Return a borrowed connection to the pool. Broken connections are closed.
+    public void releaseConnection(Connection conn, boolean broken) {
+        if (conn == null) return;
+        PooledConnection pc = null;
+        synchronized (this) {
+            pc = borrowed.remove(conn);
+        }
+        if (pc == null) {
+            closeQuietly(conn);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (broken || closed == 1 || (maxLifetimeMillis > 0 && now - pc.createdTime > maxLifetimeMillis)) {
+            if (!broken) retiredCount.incrementAndGet();
+            discard(pc);
+            return;
+        }
+        pc.lastUsedTime = now;
+        pc.borrowStack = null;
+        synchronized (this) {
+            idle.addLast(pc);
+            notifyAll();
+        }
+    }
+
+    public synchronized int getActiveCount() {
+        return borrowed.size();
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    public synchronized int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    public long getRetiredCount() {
+        return retiredCount.get();
+    }
+
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    // Close idle connections and stop housekeeping. Borrowed connections are closed when released.
+    public void close() {
+        Deque<PooledConnection> toClose = new ArrayDeque<PooledConnection>();
+        synchronized (this) {
+            closed = 1;
+            toClose.addAll(idle);
+            idle.clear();
+            notifyAll();
+        }
+        for (PooledConnection pc : toClose) {
+            discard(pc);
+        }
+        housekeeper.shutdownNow();
+    }
+
+    private Connection openConnection() throws SQLException {
+        if ( dbType == Constants.DB_SOURCE_TYPE_MYSQL ) {
+            return DriverManager.getConnection(dbUrl, dbUser, dbPass);
+        }
+        return DriverManager.getConnection(dbUrl);
+    }
+
+    // Check max lifetime, and validate connections idle longer than validation interval
+    private boolean checkConnection(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (maxLifetimeMillis > 0 && now - pc.createdTime > maxLifetimeMillis) {
+            retiredCount.incrementAndGet();
+            return false;
+        }
+        if (now - pc.lastUsedTime > validationIntervalMillis) {
+            boolean valid = false;
+            try {
+                valid = pc.conn.isValid(validationTimeoutSecs);
+            } catch (Exception e) {}
+            if (!valid) {
+                validationFailureCount.incrementAndGet();
+                logger.info("Source connection failed validation. Connection is discarded.");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void discard(PooledConnection pc) {
+        closeQuietly(pc.conn);
+        synchronized (this) {
+            totalCount -= 1;
+            notifyAll();
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (Exception e) {}
+    }
+
+    // Retire expired idle connections and report leaked connections
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        Deque<PooledConnection> expired = new ArrayDeque<PooledConnection>();
+        synchronized (this) {
+            for (PooledConnection pc : idle) {
+                if (maxLifetimeMillis > 0 && now - pc.createdTime > maxLifetimeMillis) {
+                    expired.add(pc);
+                }
+            }
+            idle.removeAll(expired);
+            if (leakDetectionMillis > 0) {
+                for (PooledConnection pc : borrowed.values()) {
+                    if (pc.leakReported == 0 && now - pc.borrowTime > leakDetectionMillis) {
+                        pc.leakReported = 1;
+                        leakCount.incrementAndGet();
+                        logger.log(Level.WARNING, String.format("Possible source connection leak. Borrowed for %d seconds.",
+                            (now - pc.borrowTime)/1000), pc.borrowStack);
+                    }
+                }
+            }
+        }
+        for (PooledConnection pc : expired) {
+            retiredCount.incrementAndGet();
+            discard(pc);
+        }
+    }
+
+}
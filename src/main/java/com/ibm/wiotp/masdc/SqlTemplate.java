@@ -0,0 +1,245 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.nio.file.*;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.logging.*;
+
+
+// Extraction SQL template (deviceSqlTemplate.sql or alarmSqlTemplate.sql).
+// The template is parsed once: the last two format specifiers are the start and end time
+// of the extraction window, and are turned into bind parameters. Any format specifiers before
+// them are the year and month of the partition table. Template is parsed again only when
+// the modification time of the template file changes.
+// Row filters (tag query mode, data integrity) and the tag id range of a shard are added to the
+// WHERE clause of the template as predicates with bind parameters, after the time bounds. They are
+// inserted before a trailing GROUP BY, HAVING, ORDER BY or LIMIT clause after the time bounds.
+
+public class SqlTemplate {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    // printf style format specifier, optionally enclosed in quotes
+    private static final Pattern SPECIFIER = Pattern.compile("(['\"]?)%(\\d+\\$)?[-#+ 0,(]*\\d*(\\.\\d+)?([a-zA-Z%])\\1");
+
+    // Ignition partition table name, sqlt_data_<driver id>_<year>_<month>
+    public static final Pattern PARTITION_TABLE = Pattern.compile("sqlt_data_\\d+_\\d+_\\d+");
+
+    // Clause after the WHERE clause of the template
+    private static final Pattern TRAILING_CLAUSE = Pattern.compile("\\b(GROUP\\s+BY|HAVING|ORDER\\s+BY|LIMIT)\\b|;", Pattern.CASE_INSENSITIVE);
+
+    private static final String TAG_RANGE_SQL = " AND tagid >= ? AND tagid < ?";
+
+    public static final int BIND_LONG = 1;
+    public static final int BIND_DATE_STRING = 2;
+
+    private String templateFile;
+    private long lastModified = -1;
+    private String templateSql = "";
+    private String parsedSql = "";
+    private String templateTail = "";
+    private int bindType = BIND_LONG;
+    private int version = 0;
+    private List<String> filterPredicates = new ArrayList<String>();
+    private List<Integer> filterValues = new ArrayList<Integer>();
+
+    public SqlTemplate(String templateFile) {
+        this.templateFile = templateFile;
+    }
+
+    // Device data template with query mode and data integrity filters. Filter is not set if value is 0.
+    public SqlTemplate(String templateFile, int queryMode, int dataIntegrity) {
+        this.templateFile = templateFile;
+        if (queryMode != Constants.QUERY_MODE_ALL) {
+            addFilter("tagid IN (SELECT id FROM sqlth_te WHERE querymode = ?)", queryMode);
+        }
+        if (dataIntegrity > 0) {
+            addFilter("dataintegrity >= ?", dataIntegrity);
+        }
+    }
+
+    private void addFilter(String predicate, int value) {
+        filterPredicates.add(predicate);
+        filterValues.add(value);
+    }
+
+    public String getTemplateFile() {
+        return templateFile;
+    }
+
+    // Incremented every time the template file is parsed
+    public synchronized int getVersion() {
+        reloadIfChanged();
+        return version;
+    }
+
+    public synchronized int getBindType() {
+        reloadIfChanged();
+        return bindType;
+    }
+
+    // SQL with start and end time as bind parameters, for the partition table of the given year and month
+    public String getExtractSql(int year, int month) {
+        return getExtractSql(year, month, false);
+    }
+
+    // Same, with tag id range predicate for extraction of a tag id shard of the window
+    public synchronized String getExtractSql(int year, int month, boolean tagRange) {
+        reloadIfChanged();
+        return String.format(parsedSql, year, month) + getFilterSql(null) + (tagRange ? TAG_RANGE_SQL : "") + String.format(templateTail);
+    }
+
+    // True if the template reads a partition table (sqlt_data_<driver id>_<year>_<month>)
+    public boolean hasPartitionTable() {
+        return PARTITION_TABLE.matcher(getExtractSql(0, 0)).find();
+    }
+
+    // Partition table of the template for the year and month, null if the template has no partition table
+    public String getTableName(int year, int month) {
+        Matcher m = PARTITION_TABLE.matcher(getExtractSql(year, month));
+        if (m.find()) return m.group();
+        return null;
+    }
+
+    // SQL with start and end time as bind parameters, for the specified partition table
+    // (e.g. sqlt_data_2_2021_05 from partition catalog) in place of the template table.
+    // Throws IllegalStateException if the template has no partition table.
+    public String getExtractSql(String tableName) {
+        return getExtractSql(tableName, false);
+    }
+
+    public String getExtractSql(String tableName, boolean tagRange) {
+        String sql = getExtractSql(0, 0, tagRange);
+        Matcher m = PARTITION_TABLE.matcher(sql);
+        if (!m.find()) {
+            throw new IllegalStateException("SQL template has no partition table: " + templateFile);
+        }
+        return sql.substring(0, m.start()) + tableName + sql.substring(m.end());
+    }
+
+    // Bind tag id range, after time bounds and filters
+    public void bindTagRange(PreparedStatement ps, long fromTagId, long toTagId) throws SQLException {
+        int index = 3 + filterValues.size();
+        ps.setLong(index, fromTagId);
+        ps.setLong(index + 1, toTagId);
+    }
+
+    // Bind start and end time of the extraction window
+    public void bindExtractParams(PreparedStatement ps, long startMilli, long endMilli) throws SQLException {
+        if (getBindType() == BIND_LONG) {
+            ps.setLong(1, startMilli);
+            ps.setLong(2, endMilli);
+        } else {
+            ps.setString(1, formatDate(startMilli));
+            ps.setString(2, formatDate(endMilli));
+        }
+        for (int i = 0; i < filterValues.size(); i++) {
+            ps.setInt(3 + i, filterValues.get(i));
+        }
+    }
+
+    // SQL with literal start and end time values
+    public synchronized String render(long startMilli, long endMilli, int year, int month) {
+        reloadIfChanged();
+        if (bindType == BIND_LONG) {
+            return String.format(templateSql, year, month, startMilli, endMilli) + getFilterSql(filterValues) + String.format(templateTail);
+        }
+        return String.format(templateSql, formatDate(startMilli), formatDate(endMilli)) + getFilterSql(filterValues) + String.format(templateTail);
+    }
+
+    // Filter predicates with bind parameters, or with literal values if values are specified
+    private String getFilterSql(List<Integer> values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < filterPredicates.size(); i++) {
+            String predicate = filterPredicates.get(i);
+            if (values != null) {
+                predicate = predicate.replace("?", String.valueOf(values.get(i)));
+            }
+            sb.append(" AND ").append(predicate);
+        }
+        return sb.toString();
+    }
+
+    private void reloadIfChanged() {
+        try {
+            long modified = Files.getLastModifiedTime(Paths.get(templateFile)).toMillis();
+            if (modified == lastModified) return;
+            String sql = new String(Files.readAllBytes(Paths.get(templateFile)));
+            parse(sql);
+            lastModified = modified;
+            version += 1;
+            logger.info("Loaded extraction SQL template: " + templateFile);
+        } catch (Exception ex) {
+            logger.log(Level.INFO, "Failed to load SQL template: " + templateFile, ex);
+        }
+    }
+
+    private void parse(String sql) {
+        // split off the clauses after the WHERE clause, predicates are inserted before them
+        int boundsEnd = 0;
+        Matcher m = SPECIFIER.matcher(sql);
+        while (m.find()) {
+            boundsEnd = m.end();
+        }
+        String tail = "";
+        Matcher t = TRAILING_CLAUSE.matcher(sql);
+        if (t.find(boundsEnd)) {
+            int end = t.start();
+            while (end > 0 && Character.isWhitespace(sql.charAt(end - 1))) end--;
+            tail = sql.substring(end);
+            sql = sql.substring(0, end);
+        }
+
+        List<int[]> specs = new ArrayList<int[]>();
+        List<Character> conversions = new ArrayList<Character>();
+        m = SPECIFIER.matcher(sql);
+        while (m.find()) {
+            char conversion = m.group(4).charAt(0);
+            if (conversion == '%' || conversion == 'n') continue;
+            specs.add(new int[] {m.start(), m.end()});
+            conversions.add(conversion);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        int boundStart = specs.size() - 2;
+        int pos = 0;
+        for (int i = 0; i < specs.size(); i++) {
+            if (i < boundStart) continue;
+            int[] spec = specs.get(i);
+            sb.append(sql, pos, spec[0]);
+            sb.append("?");
+            pos = spec[1];
+        }
+        sb.append(sql.substring(pos));
+
+        templateSql = sql;
+        templateTail = tail;
+        parsedSql = sb.toString();
+        bindType = BIND_LONG;
+        if (boundStart >= 0 && conversions.get(boundStart) == 's') {
+            bindType = BIND_DATE_STRING;
+        }
+    }
+
+    static String formatDate(long timeMilli) {
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        return df.format(new Date(timeMilli));
+    }
+
+}
@@ -77,6 +77,29 @@ public class StatsServer {
         sb.append(String.format("Process Rate per second: %d \r\n", offsetRecord.getRate()));
         sb.append(String.format("Last data extract start time (in seconds): %d \r\n", offsetRecord.getStartTimeSecs()));
         sb.append(String.format("Last data extract end   time (in seconds): %d \r\n", offsetRecord.getEndTimeSecs()));
+        sb.append(String.format("Query timeouts: %d \r\n", QueryWatchdog.getTimeoutCount()));
+        sb.append(String.format("\r\n"));
+        sb.append(String.format("Pipeline stats:\r\n"));
+        sb.append(String.format("Upload queue depth: %d/%d \r\n", offsetRecord.getUploadQueueDepth(), offsetRecord.getUploadQueueSize()));
+        sb.append(String.format("Busy upload workers: %d/%d \r\n", offsetRecord.getUploadWorkersBusy(), offsetRecord.getUploadWorkers()));
+        sb.append(String.format("Backfill partitions done: %d/%d \r\n", offsetRecord.getBackfillPartitionsDone(), offsetRecord.getBackfillPartitions()));
+        if (offsetRecord.getBacklogRows() >= 0) {
+            sb.append(String.format("Estimated backlog rows: %d \r\n", offsetRecord.getBacklogRows()));
+            sb.append(String.format("Estimated backlog time (in seconds): %d \r\n", offsetRecord.getBacklogEtaSecs()));
+        }
+        SourceConnectionPool pool = SourceConnectionPool.getInstance();
+        if (pool != null) {
+            sb.append(String.format("\r\n"));
+            sb.append(String.format("Source connection pool stats:\r\n"));
+            sb.append(String.format("Active/Idle/Max connections: %d/%d/%d \r\n", pool.getActiveCount(), pool.getIdleCount(), pool.getMaxSize()));
+            sb.append(String.format("Created connections: %d \r\n", pool.getCreatedCount()));
+            sb.append(String.format("Borrowed connections: %d \r\n", pool.getBorrowCount()));
+            sb.append(String.format("Waits for connection: %d \r\n", pool.getWaitCount()));
+            sb.append(String.format("Failed validations: %d \r\n", pool.getValidationFailureCount()));
+            sb.append(String.format("Retired connections: %d \r\n", pool.getRetiredCount()));
+            sb.append(String.format("Possible leaks: %d \r\n", pool.getLeakCount()));
+            sb.append(String.format("Statement cache hits/misses: %d/%d \r\n", pool.getStatementCacheHits(), pool.getStatementCacheMisses()));
+        }
         sb.append("</pre> \r\n");
         sb.append("</body> </html> \r\n");
         return sb.toString();
@@ -0,0 +1,65 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.util.logging.Logger;
+import java.util.concurrent.Callable;
+
+
+// Extracts one sub window of a historical extraction window, or one tag id shard of a window
+// from a partition table, using its own source connection.
+// Returns number of extracted rows or one of the EXTRACT_RESULT status values.
+
+public class SubWindowExtractor implements Callable<Long> {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private ChunkSink pipeline;
+    private UploadPipeline.Tracker tracker = null;
+    private long startMilli;
+    private long endMilli;
+    private int year;
+    private int month;
+    private String tableName = null;
+    private long fromTagId = -1;
+    private long toTagId = -1;
+
+    public SubWindowExtractor(ChunkSink pipeline, long startMilli, long endMilli, int year, int month) {
+        this.pipeline = pipeline;
+        this.startMilli = startMilli;
+        this.endMilli = endMilli;
+        this.year = year;
+        this.month = month;
+    }
+
+    // Tag id shard [fromTagId, toTagId) of a window
+    public SubWindowExtractor(ChunkSink pipeline, UploadPipeline.Tracker tracker, long startMilli, long endMilli,
+            int year, int month, String tableName, long fromTagId, long toTagId) {
+        this(pipeline, startMilli, endMilli, year, month);
+        this.tracker = tracker;
+        this.tableName = tableName;
+        this.fromTagId = fromTagId;
+        this.toTagId = toTagId;
+    }
+
+    @Override
+    public Long call() throws Exception {
+        long rowCount;
+        if (fromTagId != -1) {
+            rowCount = DBConnector.extractRange(pipeline, tracker, startMilli, endMilli, year, month, tableName, fromTagId, toTagId);
+            logger.info(String.format("Tag shard extracted: start=%d end=%d fromTagId=%d rows=%d", startMilli, endMilli, fromTagId, rowCount));
+        } else {
+            rowCount = DBConnector.extractWindow(pipeline, startMilli, endMilli, year, month);
+            logger.info(String.format("Sub window extracted: start=%d end=%d rows=%d", startMilli, endMilli, rowCount));
+        }
+        return rowCount;
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.*;
+
+
+// In-memory copy of Ignition tag table (sqlth_te), keyed by tag id. Used to resolve tag attributes
+// of rows extracted with join-free data query (deviceDataSqlTemplate.sql). Catalog is refreshed
+// incrementally: new tags are read using id > lastSeenId, and tags retired since the last refresh
+// are marked as retired. Retired tags are kept, as historical data can still refer to them.
+// New tags are evaluated against the tag filter when they are loaded. Tag ids can become visible
+// out of order, a tag id below the last seen id that is not in the catalog is read by id.
+
+public class TagCatalog {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private static final String NEW_TAGS_SQL = "SELECT id, tagpath, datatype, querymode, retired FROM sqlth_te WHERE id > ? ORDER BY id";
+    private static final String TAG_SQL = "SELECT id, tagpath, datatype, querymode, retired FROM sqlth_te WHERE id = ?";
+    private static final String RETIRED_TAGS_SQL = "SELECT id, retired FROM sqlth_te WHERE retired > ?";
+
+    private Config config;
+    private TagFilter tagFilter;
+    private Map<Long, Tag> tags = new ConcurrentHashMap<Long, Tag>();
+    // tag ids without tag path, rows of these tags are not extracted
+    private Set<Long> noTagpath = ConcurrentHashMap.newKeySet();
+    private volatile long lastSeenId = 0;
+    private long lastRetired = 0;
+    private long lastRefreshMilli = 0;
+    private long refreshIntervalMilli;
+
+    public TagCatalog(Config config, TagFilter tagFilter) {
+        this.config = config;
+        this.tagFilter = tagFilter;
+        this.refreshIntervalMilli = config.getTagCatalogRefresh() * 1000L;
+    }
+
+    // Tag id of an extracted row is not in the catalog, or the catalog could not be refreshed
+    public static class UnknownTagException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnknownTagException(String message) {
+            super(message);
+        }
+    }
+
+    // Attributes of a tag
+    public static class Tag {
+        private long id;
+        private String tagpath;
+        private String evtName;
+        private int dataType;
+        private int queryMode;
+        private volatile long retired;
+        private volatile TagData tagData;
+
+        Tag(long id, String tagpath, int dataType, int queryMode, long retired) {
+            this.id = id;
+            this.tagpath = tagpath.toLowerCase();
+            String[] tagelems = this.tagpath.split("/");
+            this.evtName = tagelems[tagelems.length-1];
+            this.dataType = dataType;
+            this.queryMode = queryMode;
+            this.retired = retired;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        // lower case tag path
+        public String getTagpath() {
+            return tagpath;
+        }
+
+        public String getEvtName() {
+            return evtName;
+        }
+
+        public int getDataType() {
+            return dataType;
+        }
+
+        public int getQueryMode() {
+            return queryMode;
+        }
+
+        public boolean isRetired() {
+            return retired > 0;
+        }
+
+        // Device id and type of the tag, set on first use
+        public TagData getTagData() {
+            return tagData;
+        }
+
+        public void setTagData(TagData tagData) {
+            this.tagData = tagData;
+        }
+    }
+
+    public int size() {
+        return tags.size();
+    }
+
+    // Returns tag attributes. A tag id above the last seen id is a new tag, and new tags are read from
+    // the source right away. Other unknown tag ids are read by id. Throws UnknownTagException if the tag
+    // is still not known, or the source could not be read, so the window is extracted again instead of
+    // losing rows of the tag. Returns null for a tag without tag path.
+    public Tag get(long id) throws UnknownTagException {
+        Tag tag = tags.get(id);
+        if (tag != null) return tag;
+        if (noTagpath.contains(id)) return null;
+
+        boolean refreshed = (id > lastSeenId) ? refresh(0) : loadTag(id);
+        tag = tags.get(id);
+        if (tag == null) {
+            if (noTagpath.contains(id)) return null;
+            if (refreshed) {
+                throw new UnknownTagException("Tag is not found in tag catalog: tagid=" + id);
+            }
+            throw new UnknownTagException("Tag catalog refresh failed: tagid=" + id);
+        }
+        return tag;
+    }
+
+    // Read a tag by id, for a tag that became visible after tags with higher ids. Returns false if it failed.
+    private synchronized boolean loadTag(long id) {
+        if (tags.containsKey(id)) return true;
+        SourceConnectionPool pool = SourceConnectionPool.getInstance(config);
+        Connection conn = null;
+        boolean broken = false;
+        try {
+            conn = pool.getConnection();
+            PreparedStatement stmt = pool.prepareStatement(conn, TAG_SQL);
+            stmt.setLong(1, id);
+            ResultSet rs = stmt.executeQuery();
+            try {
+                if (rs.next()) {
+                    addTag(rs);
+                    logger.info("Tag is added to tag catalog: tagid=" + id);
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (Exception e) {
+            logger.log(Level.INFO, "Failed to read tag: tagid=" + id + ": " + e.getMessage());
+            broken = true;
+        } finally {
+            if (conn != null) pool.releaseConnection(conn, broken);
+        }
+        return !broken;
+    }
+
+    // Add a tag from a row of NEW_TAGS_SQL or TAG_SQL. Returns false if the tag has no tag path.
+    private boolean addTag(ResultSet rs) throws Exception {
+        long id = rs.getLong(1);
+        String tagpath = rs.getString(2);
+        if (tagpath == null) {
+            noTagpath.add(id);
+            return false;
+        }
+        long retired = rs.getLong(5);
+        Tag tag = new Tag(id, tagpath, rs.getInt(3), rs.getInt(4), retired);
+        tags.put(id, tag);
+        if (tagFilter != null) {
+            tagFilter.check(id, tag.getTagpath());
+        }
+        return true;
+    }
+
+    // Refresh catalog if refresh interval has passed since the last refresh
+    public void refreshIfDue() {
+        refresh(refreshIntervalMilli);
+    }
+
+    // Returns false if the refresh failed
+    private synchronized boolean refresh(long minIntervalMilli) {
+        long now = System.currentTimeMillis();
+        if (lastRefreshMilli > 0 && (now - lastRefreshMilli) < minIntervalMilli) return true;
+
+        SourceConnectionPool pool = SourceConnectionPool.getInstance(config);
+        Connection conn = null;
+        boolean broken = false;
+        int newCount = 0;
+        int retiredCount = 0;
+        try {
+            conn = pool.getConnection();
+
+            PreparedStatement stmt = pool.prepareStatement(conn, NEW_TAGS_SQL);
+            stmt.setLong(1, lastSeenId);
+            ResultSet rs = stmt.executeQuery();
+            try {
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    if (addTag(rs)) {
+                        newCount += 1;
+                        long retired = rs.getLong(5);
+                        if (retired > lastRetired) lastRetired = retired;
+                    }
+                    if (id > lastSeenId) lastSeenId = id;
+                }
+            } finally {
+                rs.close();
+            }
+
+            stmt = pool.prepareStatement(conn, RETIRED_TAGS_SQL);
+            stmt.setLong(1, lastRetired);
+            rs = stmt.executeQuery();
+            try {
+                while (rs.next()) {
+                    long retired = rs.getLong(2);
+                    Tag tag = tags.get(rs.getLong(1));
+                    if (tag != null && !tag.isRetired()) {
+                        tag.retired = retired;
+                        retiredCount += 1;
+                    }
+                    if (retired > lastRetired) lastRetired = retired;
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (Exception e) {
+            logger.log(Level.INFO, "Failed to refresh tag catalog: " + e.getMessage());
+            broken = true;
+        } finally {
+            if (conn != null) pool.releaseConnection(conn, broken);
+            lastRefreshMilli = now;
+        }
+
+        if (newCount > 0 || retiredCount > 0) {
+            logger.info(String.format("Tag catalog refreshed: tags=%d new=%d retired=%d lastSeenId=%d", tags.size(), newCount, retiredCount, lastSeenId));
+        }
+        return !broken;
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+
+// Tag id exclusion set. Discard patterns and entity type patterns are evaluated once per tag id,
+// and the result is kept in two bitmaps: ids that are checked, and ids that are excluded.
+// Rows of excluded tags (tags matching a discard pattern, or not matching any entity type)
+// are never uploaded, and are skipped by the extractor before any other processing.
+// State is read for every extracted row without locking. Bitmaps are updated by check only,
+// and a grown pair of bitmaps is published as a new Bitmaps object.
+
+public class TagFilter {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    public static final int UNKNOWN = 0;
+    public static final int KEEP = 1;
+    public static final int EXCLUDED = 2;
+
+    private Config config;
+    private volatile Bitmaps bitmaps = new Bitmaps(1024);
+    private long excludedCount = 0;
+
+    // Checked and excluded bits of tag ids, 64 ids per word
+    private static class Bitmaps {
+        private final AtomicLongArray checked;
+        private final AtomicLongArray excluded;
+
+        Bitmaps(int words) {
+            checked = new AtomicLongArray(words);
+            excluded = new AtomicLongArray(words);
+        }
+
+        int length() {
+            return checked.length();
+        }
+    }
+
+    public TagFilter(Config config) {
+        this.config = config;
+    }
+
+    // State of a tag id: UNKNOWN if it is not checked yet
+    public int getState(long id) {
+        if (id < 0 || id > Integer.MAX_VALUE) return UNKNOWN;
+        Bitmaps b = bitmaps;
+        int word = (int) (id >>> 6);
+        if (word >= b.length()) return UNKNOWN;
+        long bit = 1L << id;
+        if ((b.checked.get(word) & bit) == 0) return UNKNOWN;
+        return ((b.excluded.get(word) & bit) != 0) ? EXCLUDED : KEEP;
+    }
+
+    // Evaluate tag path of a tag id, and remember the result. Returns KEEP or EXCLUDED.
+    public int check(long id, String tagpath) {
+        boolean exclude = (tagpath == null || config.isDiscardedTag(tagpath) || config.getTypeByTagname(tagpath).equals(""));
+        synchronized (this) {
+            if (id >= 0 && id <= Integer.MAX_VALUE) {
+                int word = (int) (id >>> 6);
+                long bit = 1L << id;
+                Bitmaps b = grow(word);
+                if ((b.checked.get(word) & bit) == 0) {
+                    // excluded bit is set before checked bit, so a reader that sees the checked bit sees the result
+                    if (exclude) {
+                        b.excluded.set(word, b.excluded.get(word) | bit);
+                        excludedCount += 1;
+                        logger.fine("Tag is excluded from extraction: tagid=" + id + " tagpath=" + tagpath);
+                    }
+                    b.checked.set(word, b.checked.get(word) | bit);
+                }
+            }
+        }
+        return exclude ? EXCLUDED : KEEP;
+    }
+
+    // Bitmaps with room for a word, called with the lock held
+    private Bitmaps grow(int word) {
+        Bitmaps b = bitmaps;
+        if (word < b.length()) return b;
+        int words = b.length();
+        while (words <= word) {
+            words = (words > Integer.MAX_VALUE / 2) ? word + 1 : words * 2;
+        }
+        Bitmaps grown = new Bitmaps(words);
+        for (int i = 0; i < b.length(); i++) {
+            grown.checked.set(i, b.checked.get(i));
+            grown.excluded.set(i, b.excluded.get(i));
+        }
+        bitmaps = grown;
+        return grown;
+    }
+
+    public synchronized long getExcludedCount() {
+        return excludedCount;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+
+// Tag attributes of extracted rows, keyed by tag id. Device id, device type, event name and
+// lower case tag path of a tag are resolved once, when the tag is first seen, and then found
+// with an open addressing probe on the tag id, without allocation. Table is read without locking:
+// entries are immutable and never removed, and a grown table is published as a new array.
+// Only device data rows are interned, alarm rows have no tag id and are resolved from the tag cache.
+
+public class TagInternTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Interned attributes of a tag
+    public static class Entry {
+        private final long tagId;
+        private final String tagpath;
+        private final String deviceId;
+        private final String deviceType;
+        private final String evtName;
+
+        Entry(long tagId, String tagpath, String deviceId, String deviceType, String evtName) {
+            this.tagId = tagId;
+            this.tagpath = tagpath;
+            this.deviceId = deviceId;
+            this.deviceType = deviceType;
+            this.evtName = evtName;
+        }
+
+        public long getTagId() {
+            return tagId;
+        }
+
+        // lower case tag path
+        public String getTagpath() {
+            return tagpath;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public String getDeviceType() {
+            return deviceType;
+        }
+
+        public String getEvtName() {
+            return evtName;
+        }
+    }
+
+    private volatile Entry[] entries = new Entry[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Returns interned attributes of a tag id, or null if the tag is not seen yet
+    public Entry get(long tagId) {
+        Entry[] table = entries;
+        int mask = table.length - 1;
+        int i = slot(tagId, mask);
+        Entry entry;
+        while ((entry = table[i]) != null) {
+            if (entry.tagId == tagId) return entry;
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    // Intern attributes of a tag. Returns the entry already in the table if the tag is interned
+    // by another extractor thread in the meantime.
+    public synchronized Entry put(long tagId, String tagpath, String deviceId, String deviceType, String evtName) {
+        Entry entry = get(tagId);
+        if (entry != null) return entry;
+        entry = new Entry(tagId, tagpath, deviceId, deviceType, evtName);
+        // keep load factor at most 1/2
+        if ((size + 1) * 2 > entries.length) {
+            Entry[] table = new Entry[entries.length * 2];
+            for (Entry e : entries) {
+                if (e != null) insert(table, e);
+            }
+            insert(table, entry);
+            entries = table;
+        } else {
+            insert(entries, entry);
+        }
+        size += 1;
+        return entry;
+    }
+
+    private static void insert(Entry[] table, Entry entry) {
+        int mask = table.length - 1;
+        int i = slot(entry.tagId, mask);
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = entry;
+    }
+
+    // Fibonacci hashing, tag ids are mostly sequential
+    private static int slot(long tagId, int mask) {
+        return (int) ((tagId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+// Bounded queue between data extraction and upload. Extractor threads put chunks of
+// extracted rows in the queue and block when the queue is full. Upload workers (Producer)
+// take chunks from the queue and insert them in the data lake.
+// Each chunk is counted against a Tracker, so that an extractor can wait for the upload
+// of its own chunks before moving its offset.
+// Row batches of uploaded chunks are cleared and reused for new chunks.
+
+public class UploadPipeline implements ChunkSink {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    // Pending upload count of the chunks added by one extractor
+    public static class Tracker {
+        private long pendingChunks = 0;
+
+        synchronized void add() {
+            pendingChunks += 1;
+        }
+
+        synchronized void done() {
+            pendingChunks -= 1;
+            if (pendingChunks <= 0) {
+                pendingChunks = 0;
+                notifyAll();
+            }
+        }
+
+        public synchronized long getPendingChunks() {
+            return pendingChunks;
+        }
+
+        public synchronized void waitForUploads() throws InterruptedException {
+            while (pendingChunks > 0) {
+                wait(1000);
+            }
+        }
+    }
+
+    public static class Chunk {
+        private RowBatch batch;
+        private Tracker tracker;
+
+        Chunk(RowBatch batch, Tracker tracker) {
+            this.batch = batch;
+            this.tracker = tracker;
+        }
+
+        public RowBatch getBatch() {
+            return batch;
+        }
+    }
+
+    // Marker chunk to stop upload workers
+    static final Chunk STOP_CHUNK = new Chunk(null, null);
+
+    private Config config;
+    private OffsetRecord offsetRecord;
+    private BlockingQueue<Chunk> queue;
+    private ExecutorService workerPool;
+    private int uploadWorkers = 2;
+    private int uploadQueueSize = 4;
+    private Tracker defaultTracker = new Tracker();
+    private ConcurrentLinkedQueue<RowBatch> freeBatches = new ConcurrentLinkedQueue<RowBatch>();
+    private int connectorType;
+    private String eventType;
+    private int batchCapacity;
+
+    public UploadPipeline(Config config, OffsetRecord offsetRecord) {
+        if (config == null || offsetRecord == null) {
+            throw new NullPointerException("config/offsetRecord parameter cannot be null");
+        }
+
+        this.config = config;
+        this.offsetRecord = offsetRecord;
+        this.uploadWorkers = config.getUploadWorkers();
+        this.uploadQueueSize = config.getUploadQueueSize();
+        this.queue = new ArrayBlockingQueue<Chunk>(uploadQueueSize);
+        this.connectorType = config.getConnectorType();
+        this.eventType = config.getConnectorTypeStr();
+        this.batchCapacity = (config.getStreamingExtract() == 1) ? config.getExtractChunkSize() : 1024;
+    }
+
+    public void start() {
+        logger.info(String.format("Starting upload pipeline: workers=%d queueSize=%d", uploadWorkers, uploadQueueSize));
+        offsetRecord.setUploadPipelineSize(uploadWorkers, uploadQueueSize);
+        workerPool = Executors.newFixedThreadPool(uploadWorkers);
+        for (int i = 0; i < uploadWorkers; i++) {
+            workerPool.submit(new Producer(this, offsetRecord));
+        }
+    }
+
+    // Empty row batch, reused from an uploaded chunk if there is one
+    public RowBatch newBatch() {
+        RowBatch batch = freeBatches.poll();
+        if (batch == null) {
+            batch = new RowBatch(connectorType, eventType, batchCapacity);
+        }
+        return batch;
+    }
+
+    // Keep a batch for reuse. At most one batch per queue slot and upload worker is kept.
+    public void releaseBatch(RowBatch batch) {
+        if (batch == null) return;
+        batch.clear();
+        if (freeBatches.size() < uploadQueueSize + uploadWorkers) {
+            freeBatches.offer(batch);
+        }
+    }
+
+    // Add a chunk of extracted rows for upload. Blocks while the queue is full.
+    public void put(RowBatch batch) throws InterruptedException {
+        put(batch, defaultTracker);
+    }
+
+    public void put(RowBatch batch, Tracker tracker) throws InterruptedException {
+        if (tracker == null) tracker = defaultTracker;
+        tracker.add();
+        try {
+            queue.put(new Chunk(batch, tracker));
+        } catch (InterruptedException e) {
+            tracker.done();
+            throw e;
+        }
+        offsetRecord.setUploadQueueDepth(queue.size());
+    }
+
+    public Chunk take() throws InterruptedException {
+        Chunk chunk = queue.take();
+        offsetRecord.setUploadQueueDepth(queue.size());
+        return chunk;
+    }
+
+    // Called by upload worker when a chunk is processed
+    public void chunkDone(Chunk chunk) {
+        releaseBatch(chunk.batch);
+        chunk.batch = null;
+        chunk.tracker.done();
+    }
+
+    // Wait till all chunks added to the pipeline with the default tracker are uploaded
+    public void waitForUploads() throws InterruptedException {
+        defaultTracker.waitForUploads();
+    }
+
+    public void waitForUploads(Tracker tracker) throws InterruptedException {
+        if (tracker == null) tracker = defaultTracker;
+        tracker.waitForUploads();
+    }
+
+    // Upload queued chunks and stop upload workers. Queue is FIFO, so upload workers
+    // process all chunks added before the stop markers.
+    public void shutdown() {
+        if (workerPool == null) return;
+        try {
+            for (int i = 0; i < uploadWorkers; i++) {
+                queue.put(STOP_CHUNK);
+            }
+            workerPool.shutdown();
+            if (!workerPool.awaitTermination(300, TimeUnit.SECONDS)) {
+                workerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.INFO, e.getMessage(), e);
+            workerPool.shutdownNow();
+        }
+        workerPool = null;
+        offsetRecord.setUploadQueueDepth(0);
+        logger.info("Upload pipeline is stopped.");
+    }
+
+}
+
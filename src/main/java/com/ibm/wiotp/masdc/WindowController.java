@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.util.logging.Logger;
+
+
+// Adaptive historical extraction window. Size of the next window is derived from the row density
+// (rows/second) of the last window and a target number of rows per cycle, within min and max bounds.
+// Window can at most double or halve from one cycle to the next.
+
+public class WindowController {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private int enabled = 0;
+    private long targetRows;
+    private long minWindowSecs;
+    private long maxWindowSecs;
+
+    public WindowController(Config config) {
+        this(config.getAdaptiveWindow(), config.getAdaptiveWindowTargetRows(),
+            config.getAdaptiveWindowMin(), config.getAdaptiveWindowMax());
+    }
+
+    public WindowController(int enabled, long targetRows, long minWindowSecs, long maxWindowSecs) {
+        this.enabled = enabled;
+        this.targetRows = targetRows;
+        this.minWindowSecs = minWindowSecs;
+        this.maxWindowSecs = Math.max(minWindowSecs, maxWindowSecs);
+    }
+
+    public boolean isEnabled() {
+        return enabled == 1;
+    }
+
+    // Size of the next window, based on the size of the last window and number of rows extracted from it
+    public long getNextWindowSecs(long lastWindowSecs, long rowCount) {
+        if (enabled == 0) return lastWindowSecs;
+        if (lastWindowSecs <= 0) lastWindowSecs = minWindowSecs;
+
+        long nextWindowSecs;
+        if (rowCount <= 0) {
+            nextWindowSecs = lastWindowSecs * 2;
+        } else {
+            double rowsPerSec = (double) rowCount / lastWindowSecs;
+            nextWindowSecs = (long) (targetRows / rowsPerSec);
+            nextWindowSecs = Math.min(nextWindowSecs, lastWindowSecs * 2);
+            nextWindowSecs = Math.max(nextWindowSecs, lastWindowSecs / 2);
+        }
+        nextWindowSecs = Math.max(minWindowSecs, Math.min(maxWindowSecs, nextWindowSecs));
+
+        if (nextWindowSecs != lastWindowSecs) {
+            logger.info(String.format("Adaptive window: lastWindow=%d rows=%d nextWindow=%d", lastWindowSecs, rowCount, nextWindowSecs));
+        }
+        return nextWindowSecs;
+    }
+
+}
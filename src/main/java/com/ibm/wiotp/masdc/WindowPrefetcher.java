@@ -0,0 +1,178 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.*;
+
+
+// Read-ahead of the next historical extraction window. While chunks of the current window are
+// uploaded, the predicted next window is extracted into memory, at most one window ahead and at
+// most prefetchMaxRows rows. Prefetched chunks are handed to the upload pipeline only if the offset
+// moves to exactly the predicted window, otherwise they are discarded. A discarded prefetch is
+// waited for, so it never runs at the same time as the extraction that replaces it.
+
+public class WindowPrefetcher {
+
+    private static final Logger logger = Logger.getLogger("mas-ignition-connector");
+
+    private OffsetRecord offsetRecord;
+    private long maxRows;
+    private ExecutorService executor;
+    private int connectorType;
+    private String eventType;
+    private int batchCapacity;
+
+    private Buffer buffer = null;
+    private Future<Long> future = null;
+    private long startTimeSecs;
+    private long endTimeSecs;
+    private int year;
+    private int month;
+
+    public WindowPrefetcher(Config config, OffsetRecord offsetRecord) {
+        this.offsetRecord = offsetRecord;
+        this.maxRows = config.getPrefetchMaxRows();
+        this.connectorType = config.getConnectorType();
+        this.eventType = config.getConnectorTypeStr();
+        this.batchCapacity = (config.getStreamingExtract() == 1) ? config.getExtractChunkSize() : 1024;
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    // Chunks of the prefetched window, held till the window is adopted or discarded
+    private class Buffer implements ChunkSink {
+        private List<RowBatch> chunks = new ArrayList<RowBatch>();
+        private long rows = 0;
+        private boolean discarded = false;
+
+        // Extracted rows are counted as processed before they are added, so rows of
+        // discarded chunks are taken off the processed count
+        public RowBatch newBatch() {
+            return new RowBatch(connectorType, eventType, batchCapacity);
+        }
+
+        public void releaseBatch(RowBatch batch) {
+        }
+
+        public synchronized void put(RowBatch batch, UploadPipeline.Tracker tracker) throws InterruptedException {
+            long chunkRows = batch.size();
+            if (discarded || rows + chunkRows > maxRows || Thread.currentThread().isInterrupted()) {
+                offsetRecord.setProcessedCount(-chunkRows);
+                throw new InterruptedException("Window prefetch is stopped");
+            }
+            rows += chunkRows;
+            chunks.add(batch);
+        }
+
+        synchronized List<RowBatch> getChunks() {
+            return chunks;
+        }
+
+        synchronized void discard() {
+            if (discarded) return;
+            discarded = true;
+            offsetRecord.setProcessedCount(-rows);
+            chunks.clear();
+        }
+    }
+
+    // Start extraction of the next window in background. Any earlier prefetch is discarded.
+    public void start(final long startTimeSecs, final long endTimeSecs, final int year, final int month) {
+        discard();
+        this.startTimeSecs = startTimeSecs;
+        this.endTimeSecs = endTimeSecs;
+        this.year = year;
+        this.month = month;
+        final Buffer prefetchBuffer = new Buffer();
+        buffer = prefetchBuffer;
+        future = executor.submit(new Callable<Long>() {
+            public Long call() throws Exception {
+                return DBConnector.extractWindow(prefetchBuffer, startTimeSecs * 1000, endTimeSecs * 1000, year, month);
+            }
+        });
+        logger.info(String.format("Prefetch window: start=%d end=%d year=%d month=%d", startTimeSecs, endTimeSecs, year, month));
+    }
+
+    // True if a prefetch of exactly this window is in progress or complete
+    public boolean matches(long startTimeSecs, long endTimeSecs, int year, int month) {
+        return future != null && this.startTimeSecs == startTimeSecs && this.endTimeSecs == endTimeSecs &&
+            this.year == year && this.month == month;
+    }
+
+    // Wait for the prefetch to complete and hand the chunks to the pipeline. Returns number of rows,
+    // or EXTRACT_RESULT_DISCARDED if prefetch failed, timed out or was stopped, and the window should be
+    // extracted again.
+    public long take(ChunkSink pipeline) throws InterruptedException {
+        long rowCount;
+        try {
+            rowCount = future.get();
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof InterruptedException)) {
+                logger.log(Level.INFO, "Window prefetch failed: " + e.getMessage());
+            }
+            rowCount = Constants.EXTRACT_RESULT_FAILED;
+        } catch (CancellationException e) {
+            rowCount = Constants.EXTRACT_RESULT_FAILED;
+        }
+
+        Buffer prefetchBuffer = buffer;
+        future = null;
+        buffer = null;
+        if (rowCount < 0 && rowCount != Constants.EXTRACT_RESULT_NO_TABLE) {
+            prefetchBuffer.discard();
+            logger.info(String.format("Prefetched window is not used: start=%d end=%d", startTimeSecs, endTimeSecs));
+            return Constants.EXTRACT_RESULT_DISCARDED;
+        }
+        for (RowBatch batch : prefetchBuffer.getChunks()) {
+            pipeline.put(batch, null);
+        }
+        logger.info(String.format("Prefetched window is used: start=%d end=%d rows=%d", startTimeSecs, endTimeSecs, rowCount));
+        return rowCount;
+    }
+
+    // Stop prefetch, wait for the prefetch task to end, and drop prefetched chunks
+    public void discard() {
+        if (future == null) return;
+        future.cancel(true);
+        buffer.discard();
+        awaitIdle();
+        logger.info(String.format("Prefetched window is discarded: start=%d end=%d", startTimeSecs, endTimeSecs));
+        future = null;
+        buffer = null;
+    }
+
+    // Wait till the prefetch thread is idle. Tasks of the single thread executor run in order,
+    // so an empty task completes only once the cancelled prefetch task has returned.
+    private void awaitIdle() {
+        try {
+            executor.submit(new Runnable() {
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+        }
+    }
+
+    public void shutdown() {
+        discard();
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LiveTailTest {
+
+    private LiveTail newLiveTail(long watermark) {
+        LiveTail liveTail = new LiveTail(null, 1000L, 10000L);
+        liveTail.start(watermark);
+        liveTail.setPolling(true);
+        return liveTail;
+    }
+
+    @Test
+    public void testAcceptCommit() {
+        LiveTail liveTail = newLiveTail(100000L);
+        assertTrue(liveTail.isStarted());
+
+        assertTrue(liveTail.accept(5, 100500L));
+        assertTrue(liveTail.accept(7, 100500L));
+        assertTrue(liveTail.accept(3, 101000L));
+        // watermark moves on commit only
+        assertEquals(100000L, liveTail.getWatermarkTStamp());
+        liveTail.commit();
+        assertEquals(101000L, liveTail.getWatermarkTStamp());
+        assertEquals(3, liveTail.getWatermarkTagId());
+
+        // rows of the lateness allowance read again by the next poll are skipped
+        assertFalse(liveTail.accept(5, 100500L));
+        assertFalse(liveTail.accept(3, 101000L));
+        assertTrue(liveTail.accept(6, 100500L));
+        assertTrue(liveTail.accept(4, 101000L));
+        liveTail.commit();
+        assertEquals(101000L, liveTail.getWatermarkTStamp());
+        assertEquals(4, liveTail.getWatermarkTagId());
+    }
+
+    @Test
+    public void testRollback() {
+        LiveTail liveTail = newLiveTail(100000L);
+        assertTrue(liveTail.accept(5, 100500L));
+        liveTail.commit();
+
+        // rows of a failed poll are accepted again by the next poll
+        assertTrue(liveTail.accept(6, 102000L));
+        liveTail.rollback();
+        assertEquals(100500L, liveTail.getWatermarkTStamp());
+        assertTrue(liveTail.accept(6, 102000L));
+        assertFalse(liveTail.accept(5, 100500L));
+        liveTail.commit();
+        assertEquals(102000L, liveTail.getWatermarkTStamp());
+        assertEquals(6, liveTail.getWatermarkTagId());
+    }
+
+    @Test
+    public void testPruneKeys() {
+        LiveTail liveTail = newLiveTail(100000L);
+        assertTrue(liveTail.accept(5, 100500L));
+        liveTail.commit();
+        assertTrue(liveTail.accept(5, 120000L));
+        liveTail.commit();
+
+        // keys before the lateness allowance of the watermark are dropped
+        assertTrue(liveTail.accept(5, 100500L));
+        assertFalse(liveTail.accept(5, 120000L));
+    }
+
+    @Test
+    public void testAcceptOutsidePoll() {
+        LiveTail liveTail = newLiveTail(100000L);
+        assertTrue(liveTail.accept(5, 100500L));
+        liveTail.commit();
+
+        // rows of window extraction, e.g. partition backfill, are neither tracked nor skipped
+        liveTail.setPolling(false);
+        assertTrue(liveTail.accept(5, 100500L));
+        for (long tStamp = 200000L; tStamp < 201000L; tStamp++) {
+            assertTrue(liveTail.accept(7, tStamp));
+        }
+        assertEquals(0, liveTail.getPendingCount());
+        liveTail.commit();
+        assertEquals(100500L, liveTail.getWatermarkTStamp());
+    }
+
+}
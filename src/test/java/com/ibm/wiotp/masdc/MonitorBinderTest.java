@@ -0,0 +1,93 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class MonitorBinderTest {
+
+    // Prepared statement that records bound parameters, and drops them on executeBatch and clearParameters
+    private static PreparedStatement newStatement(final Map<Integer, Object> params) {
+        return (PreparedStatement) Proxy.newProxyInstance(MonitorBinderTest.class.getClassLoader(),
+            new Class<?>[] {PreparedStatement.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    if (name.equals("executeBatch")) {
+                        params.clear();
+                        return new int[0];
+                    }
+                    if (name.equals("clearParameters")) {
+                        params.clear();
+                    } else if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+                        params.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                    }
+                    return null;
+                }
+            });
+    }
+
+    @Test
+    public void testDeviceRowsAfterExecuteBatch() throws Exception {
+        RowBatch batch = new RowBatch(Constants.CONNECTOR_DEVICE, "device", 16);
+        batch.addRow();
+        batch.setLong(RowBatch.TAGID, 12);
+        batch.setString(RowBatch.DEVICETYPE, "Pump");
+        batch.setLong(RowBatch.TIMESTAMP, 1000L);
+        batch.addRow();
+        batch.setLong(RowBatch.TAGID, 13);
+        batch.setString(RowBatch.DEVICETYPE, "Pump");
+
+        Map<Integer, Object> params = new HashMap<Integer, Object>();
+        PreparedStatement ps = newStatement(params);
+        MonitorBinder binder = MonitorBinder.forConnector(Constants.CONNECTOR_DEVICE);
+        binder.bind(ps, batch, 0);
+        ps.addBatch();
+        assertEquals(14, params.size());
+        ps.executeBatch();
+
+        // all parameters are bound again for a row after executeBatch
+        binder.bind(ps, batch, 1);
+        assertEquals(14, params.size());
+        assertEquals(13, params.get(1));
+        assertEquals("Pump", params.get(8));
+        assertEquals("null", params.get(10));
+        assertEquals("device", params.get(11));
+        assertEquals("JSON", params.get(12));
+        assertNull(params.get(13));
+    }
+
+    @Test
+    public void testAlarmRowsAfterExecuteBatch() throws Exception {
+        RowBatch batch = new RowBatch(Constants.CONNECTOR_ALARM, "alarm", 16);
+        batch.addRow();
+        batch.setLong(RowBatch.ALARMID, 7);
+
+        Map<Integer, Object> params = new HashMap<Integer, Object>();
+        PreparedStatement ps = newStatement(params);
+        MonitorBinder binder = MonitorBinder.forConnector(Constants.CONNECTOR_ALARM);
+        ps.executeBatch();
+        binder.bind(ps, batch, 0);
+        assertEquals(16, params.size());
+        assertEquals(7.0, params.get(1));
+        assertEquals("null", params.get(12));
+        assertEquals("alarm", params.get(13));
+        assertEquals("JSON", params.get(14));
+    }
+
+}
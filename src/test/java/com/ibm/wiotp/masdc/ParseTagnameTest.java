@@ -154,5 +154,35 @@ public class ParseTagnameTest {
         type = config.getTypeByTagname("ca5");
         assertNotEquals("ca5 : CA5DeviceType", "CA5DeviceType", type);
     }
-}
 
+    @Test
+    public void testDiscardPatterns() {
+        System.out.println("");
+        System.out.println("TEST: Discard patterns and tag id exclusion set");
+        System.out.println("");
+
+        JSONArray discardPatterns = new JSONArray();
+        discardPatterns.put("ca3/boiler/.*");
+        connConfig.getJSONObject("deviceTypes").put("discardPatterns", discardPatterns);
+
+        Config config = new Config(connConfig, "device");
+        try {
+            config.set();
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
+
+        assertTrue("ca3/boiler/temp : discarded", config.isDiscardedTag("ca3/boiler/temp"));
+        assertFalse("ca3/pump/temp : not discarded", config.isDiscardedTag("ca3/pump/temp"));
+        assertEquals("ca3/boiler/temp : no type", "", config.getTypeByTagname("ca3/boiler/temp"));
+        assertEquals("ca3/pump/temp : CA3DeviceType", "CA3DeviceType", config.getTypeByTagname("ca3/pump/temp"));
+
+        TagFilter tagFilter = new TagFilter(config);
+        assertEquals(TagFilter.UNKNOWN, tagFilter.getState(10));
+        assertEquals(TagFilter.EXCLUDED, tagFilter.check(10, "ca3/boiler/temp"));
+        assertEquals(TagFilter.KEEP, tagFilter.check(11, "ca3/pump/temp"));
+        assertEquals(TagFilter.EXCLUDED, tagFilter.getState(10));
+        assertEquals(TagFilter.KEEP, tagFilter.getState(11));
+        assertEquals(1, tagFilter.getExcludedCount());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class PartitionPlannerTest {
+
+    private PartitionPlanner newPlanner() {
+        PartitionPlanner planner = new PartitionPlanner(new Config(new JSONObject(), "device"));
+        List<PartitionPlanner.Partition> plan = new ArrayList<PartitionPlanner.Partition>();
+        // two drivers in May, a gap, and one driver in July
+        plan.add(new PartitionPlanner.Partition("sqlt_data_1_2021_05", 1, 1000L, 2000L));
+        plan.add(new PartitionPlanner.Partition("sqlt_data_2_2021_05", 2, 1000L, 2000L));
+        plan.add(new PartitionPlanner.Partition("sqlt_data_1_2021_07", 1, 3000L, 4000L));
+        planner.setPartitions(plan);
+        return planner;
+    }
+
+    @Test
+    public void testGetPartitions() {
+        PartitionPlanner planner = new PartitionPlanner(new Config(new JSONObject(), "device"));
+        assertFalse(planner.hasPlan());
+
+        planner = newPlanner();
+        assertTrue(planner.hasPlan());
+        List<PartitionPlanner.Partition> partitions = planner.getPartitions(1500L, 1600L);
+        assertEquals(2, partitions.size());
+        assertEquals("sqlt_data_1_2021_05", partitions.get(0).getTableName());
+        assertEquals(2, partitions.get(1).getDriverId());
+
+        // range is [start, end)
+        assertEquals(0, planner.getPartitions(2000L, 3000L).size());
+        assertEquals(1, planner.getPartitions(2500L, 3001L).size());
+        assertEquals(3, planner.getPartitions(0L, 5000L).size());
+    }
+
+    @Test
+    public void testGetNextDataMilli() {
+        PartitionPlanner planner = newPlanner();
+        assertEquals(1000L, planner.getNextDataMilli(0L));
+        assertEquals(1500L, planner.getNextDataMilli(1500L));
+        assertEquals(3000L, planner.getNextDataMilli(2000L));
+        assertEquals(-1L, planner.getNextDataMilli(4000L));
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class QueryWatchdogTest {
+
+    @Test
+    public void testPauseResume() {
+        QueryWatchdog.Watch watch = new QueryWatchdog.Watch(null, 10000L, 0L);
+        assertEquals(10000L, watch.getDeadlineMilli());
+
+        // 4 seconds used before the pause, paused time is not counted
+        watch.pause(4000L);
+        assertEquals(Long.MAX_VALUE, watch.getDeadlineMilli());
+        watch.resume(60000L);
+        assertEquals(66000L, watch.getDeadlineMilli());
+
+        // resume does not give back time used between pauses
+        watch.pause(65000L);
+        watch.resume(100000L);
+        assertEquals(101000L, watch.getDeadlineMilli());
+    }
+
+    @Test
+    public void testRepeatedPauseResume() {
+        QueryWatchdog.Watch watch = new QueryWatchdog.Watch(null, 10000L, 0L);
+        watch.pause(2000L);
+        watch.pause(5000L);
+        watch.resume(7000L);
+        watch.resume(9000L);
+        assertEquals(15000L, watch.getDeadlineMilli());
+
+        // budget used up before the pause: deadline is reached right after resume
+        watch.pause(20000L);
+        watch.resume(30000L);
+        assertEquals(30000L, watch.getDeadlineMilli());
+    }
+
+    @Test
+    public void testNoTimeout() {
+        assertNull(QueryWatchdog.watch(null, 0));
+    }
+
+}
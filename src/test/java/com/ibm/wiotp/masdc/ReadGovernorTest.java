@@ -0,0 +1,80 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ReadGovernorTest {
+
+    @Test
+    public void testMinuteOfDay() {
+        assertEquals(0, ReadGovernor.getMinuteOfDay("00:00"));
+        assertEquals(6 * 60 + 30, ReadGovernor.getMinuteOfDay("06:30"));
+        assertEquals(0, ReadGovernor.getMinuteOfDay("24:00"));
+    }
+
+    @Test
+    public void testProfiles() {
+        ReadGovernor rg = new ReadGovernor(1000, 2);
+        rg.addProfile(ReadGovernor.getMinuteOfDay("22:00"), ReadGovernor.getMinuteOfDay("06:00"), 0, 0);
+        rg.addProfile(ReadGovernor.getMinuteOfDay("12:00"), ReadGovernor.getMinuteOfDay("13:00"), 5000, 4);
+
+        assertEquals(0, rg.getMaxRowsPerSec(ReadGovernor.getMinuteOfDay("23:00")));
+        assertEquals(0, rg.getMaxQueries(ReadGovernor.getMinuteOfDay("02:00")));
+        assertEquals(5000, rg.getMaxRowsPerSec(ReadGovernor.getMinuteOfDay("12:30")));
+        assertEquals(4, rg.getMaxQueries(ReadGovernor.getMinuteOfDay("12:00")));
+        assertEquals(1000, rg.getMaxRowsPerSec(ReadGovernor.getMinuteOfDay("06:00")));
+        assertEquals(2, rg.getMaxQueries(ReadGovernor.getMinuteOfDay("13:00")));
+    }
+
+    @Test
+    public void testTokenBucket() {
+        ReadGovernor rg = new ReadGovernor(1000, 0);
+        long second = 1000000000L;
+
+        // bucket starts full
+        assertEquals(0, rg.reserve(1000, 0, 1000));
+        // empty bucket: 500 rows take half a second
+        assertEquals(second / 2, rg.reserve(500, 0, 1000));
+        // after one second, debt is paid and half a second is refilled
+        assertEquals(0, rg.reserve(500, second, 1000));
+        // bucket holds at most one second of rows
+        assertEquals(second, rg.reserve(2000, 10 * second, 1000));
+    }
+
+    @Test
+    public void testUnlimited() {
+        ReadGovernor rg = new ReadGovernor(0, 0);
+        assertEquals(0, rg.reserve(1000000, 0, 0));
+        assertEquals(0, rg.reserve(1000000, 1, 0));
+    }
+
+    @Test
+    public void testWaitNotCountedInQueryTimeout() throws Exception {
+        ReadGovernor rg = new ReadGovernor(1000, 0);
+        long startMilli = System.currentTimeMillis();
+        QueryWatchdog.Watch watch = new QueryWatchdog.Watch(null, 200, startMilli);
+
+        // full bucket, no wait
+        rg.acquireRows(1000, watch);
+        // empty bucket: 300 rows wait 300 ms, longer than the query timeout
+        rg.acquireRows(300, watch);
+        long endMilli = System.currentTimeMillis();
+        assertTrue(endMilli - startMilli >= 300);
+
+        // deadline is moved by the wait, the query has not timed out
+        assertTrue(watch.getDeadlineMilli() > endMilli);
+        assertTrue(watch.getDeadlineMilli() <= endMilli + 200);
+    }
+
+}
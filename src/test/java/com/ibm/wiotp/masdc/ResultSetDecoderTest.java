@@ -0,0 +1,59 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Types;
+import org.junit.Test;
+
+public class ResultSetDecoderTest {
+
+    private static int handler(String colName, int sqlType, int connectorType) {
+        int col = ResultSetDecoder.getBatchColumn(colName, connectorType);
+        return ResultSetDecoder.getHandler(colName, sqlType, col);
+    }
+
+    @Test
+    public void testDeviceHandlers() {
+        int device = Constants.CONNECTOR_DEVICE;
+        assertEquals(ResultSetDecoder.TAGID, handler("tagid", Types.INTEGER, device));
+        assertEquals(ResultSetDecoder.TAGPATH, handler("tagpath", Types.VARCHAR, device));
+        assertEquals(ResultSetDecoder.TSTAMP, handler("t_stamp", Types.BIGINT, device));
+        assertEquals(ResultSetDecoder.LONG, handler("intvalue", Types.BIGINT, device));
+        assertEquals(ResultSetDecoder.DOUBLE, handler("floatvalue", Types.DOUBLE, device));
+        assertEquals(ResultSetDecoder.STRING, handler("stringvalue", Types.VARCHAR, device));
+        assertEquals(ResultSetDecoder.DATE, handler("datevalue", Types.TIMESTAMP, device));
+        assertEquals(ResultSetDecoder.SKIP, handler("deviceid", Types.VARCHAR, device));
+        assertEquals(ResultSetDecoder.SKIP, handler("dataintegrity", Types.INTEGER, device));
+    }
+
+    @Test
+    public void testAlarmHandlers() {
+        int alarm = Constants.CONNECTOR_ALARM;
+        assertEquals(RowBatch.ALARMID, ResultSetDecoder.getBatchColumn("id", alarm));
+        assertEquals(RowBatch.ETYPE, ResultSetDecoder.getBatchColumn("eventtype", alarm));
+        assertEquals(ResultSetDecoder.LONG, handler("id", Types.INTEGER, alarm));
+        assertEquals(ResultSetDecoder.DOUBLE, handler("eventtype", Types.INTEGER, alarm));
+        assertEquals(ResultSetDecoder.EVENTTIME, handler("eventtime", Types.TIMESTAMP, alarm));
+        assertEquals(ResultSetDecoder.SKIP, handler("intvalue", Types.BIGINT, alarm));
+    }
+
+    @Test
+    public void testConvertedHandlers() {
+        int device = Constants.CONNECTOR_DEVICE;
+        // values that need conversion are read as objects
+        assertEquals(ResultSetDecoder.OBJECT, handler("intvalue", Types.VARCHAR, device));
+        assertEquals(ResultSetDecoder.OBJECT, handler("floatvalue", Types.VARCHAR, device));
+        assertEquals(ResultSetDecoder.OBJECT, handler("datevalue", Types.VARCHAR, device));
+        assertEquals(ResultSetDecoder.OBJECT, handler("stringvalue", Types.TIMESTAMP, device));
+    }
+
+}
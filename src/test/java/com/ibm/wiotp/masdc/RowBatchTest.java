@@ -0,0 +1,113 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+import org.junit.Test;
+
+public class RowBatchTest {
+
+    @Test
+    public void testDeviceRows() {
+        RowBatch batch = new RowBatch(Constants.CONNECTOR_DEVICE, "device", 16);
+        assertEquals("device", batch.getEventType());
+        assertEquals(RowBatch.INTVALUE, batch.getColumn("intvalue"));
+        assertEquals(-1, batch.getColumn("alarmid"));
+
+        batch.addRow();
+        batch.setLong(RowBatch.TAGID, 12);
+        batch.setObject(RowBatch.INTVALUE, Integer.valueOf(5));
+        batch.setString(RowBatch.TAG, "area1/pump1/temp");
+        batch.setString(RowBatch.DEVICETYPE, "Pump");
+        batch.addRow();
+        batch.setLong(RowBatch.TAGID, 13);
+        batch.setObject(RowBatch.FLOATVALUE, "2.5");
+        batch.setObject(RowBatch.DATEVALUE, new Timestamp(1000L));
+        batch.setString(RowBatch.DEVICETYPE, "Pump");
+
+        assertEquals(2, batch.size());
+        assertEquals(12, batch.getLong(RowBatch.TAGID, 0));
+        assertEquals(5, batch.getLong(RowBatch.INTVALUE, 0));
+        assertTrue(batch.isNull(RowBatch.FLOATVALUE, 0));
+        assertTrue(batch.isNull(RowBatch.INTVALUE, 1));
+        assertEquals(2.5, batch.getDouble(RowBatch.FLOATVALUE, 1), 0.0);
+        assertEquals(1000L, batch.getLong(RowBatch.DATEVALUE, 1));
+        assertEquals("area1/pump1/temp", batch.getString(RowBatch.TAG, 0));
+        assertNull(batch.getString(RowBatch.TAG, 1));
+    }
+
+    @Test
+    public void testDictionary() {
+        RowBatch batch = new RowBatch(Constants.CONNECTOR_DEVICE, "device", 16);
+        String[] types = {"Pump", "Valve", "Pump", "Pump"};
+        for (String type : types) {
+            batch.addRow();
+            batch.setString(RowBatch.DEVICETYPE, type);
+        }
+        int pumpCode = batch.getDictCode(RowBatch.DEVICETYPE, "Pump");
+        assertEquals(pumpCode, batch.getDictCode(RowBatch.DEVICETYPE, 0));
+        assertEquals(pumpCode, batch.getDictCode(RowBatch.DEVICETYPE, 3));
+        assertFalse(pumpCode == batch.getDictCode(RowBatch.DEVICETYPE, 1));
+        assertEquals(-1, batch.getDictCode(RowBatch.DEVICETYPE, "Motor"));
+        assertEquals("Valve", batch.getString(RowBatch.DEVICETYPE, 1));
+    }
+
+    @Test
+    public void testTypeRows() {
+        RowBatch batch = new RowBatch(Constants.CONNECTOR_DEVICE, "device", 16);
+        for (int i = 0; i < 40; i++) {
+            batch.addRow();
+            batch.setString(RowBatch.DEVICETYPE, (i % 4 == 0) ? "Valve" : "Pump");
+        }
+        batch.addRow();
+        assertEquals(2, batch.getDictSize(RowBatch.DEVICETYPE));
+        int valveCode = batch.getDictCode(RowBatch.DEVICETYPE, "Valve");
+        assertEquals("Valve", batch.getDictValue(RowBatch.DEVICETYPE, valveCode));
+        assertEquals(10, batch.getTypeRowCount(valveCode));
+        assertEquals(36, batch.getTypeRows(valveCode)[9]);
+        int pumpCode = batch.getDictCode(RowBatch.DEVICETYPE, "Pump");
+        assertEquals(30, batch.getTypeRowCount(pumpCode));
+        assertEquals(1, batch.getTypeRows(pumpCode)[0]);
+        assertEquals(0, batch.getTypeRowCount(-1));
+
+        batch.clear();
+        batch.addRow();
+        batch.setString(RowBatch.DEVICETYPE, "Motor");
+        assertEquals(1, batch.getTypeRowCount(batch.getDictCode(RowBatch.DEVICETYPE, "Motor")));
+        assertEquals(0, batch.getTypeRowCount(1));
+    }
+
+    @Test
+    public void testGrowAndReuse() {
+        RowBatch batch = new RowBatch(Constants.CONNECTOR_ALARM, "alarm", 16);
+        for (int i = 0; i < 100; i++) {
+            batch.addRow();
+            batch.setLong(RowBatch.ALARMID, i);
+            batch.setString(RowBatch.NAME, "alarm" + i);
+        }
+        assertEquals(100, batch.size());
+        assertEquals(99, batch.getLong(RowBatch.ALARMID, 99));
+        assertEquals("alarm70", batch.getString(RowBatch.NAME, 70));
+        int capacity = batch.getCapacity();
+
+        batch.clear();
+        assertEquals(0, batch.size());
+        assertEquals(capacity, batch.getCapacity());
+        batch.addRow();
+        assertTrue(batch.isNull(RowBatch.ALARMID, 0));
+        assertNull(batch.getString(RowBatch.NAME, 0));
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.ibm.wiotp.masdc;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+
+public class SqlTemplateTest {
+
+    private File templateFile;
+
+    @Before
+    public void beforeAll() throws Exception {
+        templateFile = File.createTempFile("deviceSqlTemplate", ".sql");
+    }
+
+    @After
+    public void afterAll() {
+        templateFile.delete();
+    }
+
+    private void writeTemplate(String sql) throws Exception {
+        FileWriter fw = new FileWriter(templateFile);
+        fw.write(sql);
+        fw.close();
+    }
+
+    @Test
+    public void testSqlTemplate_01() throws Exception {
+
+        System.out.println("");
+        System.out.println("TEST_01: device template - time bounds are bind parameters");
+        System.out.println("");
+
+        writeTemplate("SELECT tagid, t_stamp from sqlt_data_1_%04d_%02d as data where t_stamp >= %d and t_stamp < %d");
+        SqlTemplate template = new SqlTemplate(templateFile.getPath());
+
+        String sql = template.getExtractSql(2021, 5);
+        System.out.println("SQL: " + sql);
+        assertEquals("SELECT tagid, t_stamp from sqlt_data_1_2021_05 as data where t_stamp >= ? and t_stamp < ?", sql);
+        assertEquals(SqlTemplate.BIND_LONG, template.getBindType());
+
+        String literalSql = template.render(1000L, 2000L, 2021, 5);
+        assertEquals("SELECT tagid, t_stamp from sqlt_data_1_2021_05 as data where t_stamp >= 1000 and t_stamp < 2000", literalSql);
+    }
+
+    @Test
+    public void testSqlTemplate_02() throws Exception {
+
+        System.out.println("");
+        System.out.println("TEST_02: alarm template - quoted date strings are bind parameters");
+        System.out.println("");
+
+        writeTemplate("SELECT id, eventtime FROM alarm_events where eventtime >= '%s' and eventtime < '%s'");
+        SqlTemplate template = new SqlTemplate(templateFile.getPath());
+
+        String sql = template.getExtractSql(2021, 5);
+        System.out.println("SQL: " + sql);
+        assertEquals("SELECT id, eventtime FROM alarm_events where eventtime >= ? and eventtime < ?", sql);
+        assertEquals(SqlTemplate.BIND_DATE_STRING, template.getBindType());
+    }
+
+    @Test
+    public void testSqlTemplate_03() throws Exception {
+
+        System.out.println("");
+        System.out.println("TEST_03: template is reloaded when file modification time changes");
+        System.out.println("");
+
+        writeTemplate("SELECT tagid from sqlt_data_1_%04d_%02d where t_stamp >= %d and t_stamp < %d");
+        SqlTemplate template = new SqlTemplate(templateFile.getPath());
+        template.getExtractSql(2021, 5);
+        int version = template.getVersion();
+
+        // same modification time - template is not parsed again
+        template.getExtractSql(2021, 6);
+        assertEquals(version, template.getVersion());
+
+        writeTemplate("SELECT tagid, intvalue from sqlt_data_1_%04d_%02d where t_stamp >= %d and t_stamp < %d");
+        templateFile.setLastModified(templateFile.lastModified() + 2000);
+
+        String sql = template.getExtractSql(2021, 6);
+        assertTrue(template.getVersion() > version);
+        assertEquals("SELECT tagid, intvalue from sqlt_data_1_2021_06 where t_stamp >= ? and t_stamp < ?", sql);
+    }
+
+    @Test
+    public void testSqlTemplate_04() throws Exception {
+
+        System.out.println("");
+        System.out.println("TEST_04: query mode and data integrity filters are appended to the template");
+        System.out.println("");
+
+        writeTemplate("SELECT tagid from sqlt_data_1_%04d_%02d where t_stamp >= %d and t_stamp < %d");
+        SqlTemplate template = new SqlTemplate(templateFile.getPath(), Constants.QUERY_MODE_ANALOG, 192);
+
+        String sql = template.getExtractSql(2021, 5);
+        System.out.println("SQL: " + sql);
+        assertEquals("SELECT tagid from sqlt_data_1_2021_05 where t_stamp >= ? and t_stamp < ?" +
+            " AND tagid IN (SELECT id FROM sqlth_te WHERE querymode = ?) AND dataintegrity >= ?", sql);
+
+        String literalSql = template.render(1000L, 2000L, 2021, 5);
+        assertEquals("SELECT tagid from sqlt_data_1_2021_05 where t_stamp >= 1000 and t_stamp < 2000" +
+            " AND tagid IN (SELECT id FROM sqlth_te WHERE querymode = 2) AND dataintegrity >= 192", literalSql);
+
+        // no filters
+        template = new SqlTemplate(templateFile.getPath(), Constants.QUERY_MODE_ALL, 0);
+        assertEquals("SELECT tagid from sqlt_data_1_2021_05 where t_stamp >= ? and t_stamp < ?", template.getExtractSql(2021, 5));
+    }
+
+    @Test
+    public void testSqlTemplate_05() throws Exception {
+
+        System.out.println("");
+        System.out.println("TEST_05: partition table from partition catalog replaces template table");
+        System.out.println("");
+
+        writeTemplate("SELECT tagid, tagpath from sqlt_data_1_%04d_%02d as data, sqlth_te as tag where data.tagid = tag.id and t_stamp >= %d and t_stamp < %d");
+        SqlTemplate template = new SqlTemplate(templateFile.getPath());
+
+        String sql = template.getExtractSql("sqlt_data_2_2021_05");
+        System.out.println("SQL: " + sql);
+        assertEquals("SELECT tagid, tagpath from sqlt_data_2_2021_05 as data, sqlth_te as tag where data.tagid = tag.id and t_stamp >= ? and t_stamp < ?", sql);
+    }
+
+    @Test
+    public void testSqlTemplate_07() throws Exception {
+
+        System.out.println("");
+        System.out.println("TEST_07: filters and tag range are inserted before ORDER BY and LIMIT");
+        System.out.println("");
+
+        writeTemplate("SELECT tagid, t_stamp from sqlt_data_1_%04d_%02d where t_stamp >= %d and t_stamp < %d\nORDER BY t_stamp LIMIT 100000;");
+        SqlTemplate template = new SqlTemplate(templateFile.getPath(), Constants.QUERY_MODE_ANALOG, 0);
+
+        String sql = template.getExtractSql(2021, 5);
+        System.out.println("SQL: " + sql);
+        assertEquals("SELECT tagid, t_stamp from sqlt_data_1_2021_05 where t_stamp >= ? and t_stamp < ?" +
+            " AND tagid IN (SELECT id FROM sqlth_te WHERE querymode = ?)\nORDER BY t_stamp LIMIT 100000;", sql);
+
+        sql = template.getExtractSql("sqlt_data_2_2021_05", true);
+        assertEquals("SELECT tagid, t_stamp from sqlt_data_2_2021_05 where t_stamp >= ? and t_stamp < ?" +
+            " AND tagid IN (SELECT id FROM sqlth_te WHERE querymode = ?) AND tagid >= ? AND tagid < ?\nORDER BY t_stamp LIMIT 100000;", sql);
+
+        String literalSql = template.render(1000L, 2000L, 2021, 5);
+        assertEquals("SELECT tagid, t_stamp from sqlt_data_1_2021_05 where t_stamp >= 1000 and t_stamp < 2000" +
+            " AND tagid IN (SELECT id FROM sqlth_te WHERE querymode = 2)\nORDER BY t_stamp LIMIT 100000;", literalSql);
+
+        // ORDER BY in a sub query before the time bounds is kept in place
+        writeTemplate("SELECT tagid from sqlt_data_1_%04d_%02d where tagid IN (SELECT id FROM sqlth_te ORDER BY id) and t_stamp >= %d and t_stamp < %d");
+        templateFile.setLastModified(templateFile.lastModified() + 2000);
+        assertEquals("SELECT tagid from sqlt_data_1_2021_05 where tagid IN (SELECT id FROM sqlth_te ORDER BY id) and t_stamp >= ? and t_stamp < ?" +
+            " AND tagid IN (SELECT id FROM sqlth_te WHERE querymode = ?)", template.getExtractSql(2021, 5));
+    }
+
+    @Test
+    public void testSqlTemplate_06() throws Exception {
+
+        System.out.println("");
+        System.out.println("TEST_06: template without partition table");
+        System.out.println("");
+
+        writeTemplate("SELECT tagid, t_stamp from history_view where t_stamp >= %d and t_stamp < %d");
+        SqlTemplate template = new SqlTemplate(templateFile.getPath());
+
+        assertFalse(template.hasPartitionTable());
+        assertNull(template.getTableName(2021, 5));
+        try {
+            template.getExtractSql("sqlt_data_2_2021_05");
+            fail("partition table can not be extracted with a template without partition table");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains(templateFile.getPath()));
+        }
+
+        writeTemplate("SELECT tagid from sqlt_data_1_%04d_%02d where t_stamp >= %d and t_stamp < %d");
+        templateFile.setLastModified(templateFile.lastModified() + 2000);
+        assertTrue(template.hasPartitionTable());
+        assertEquals("sqlt_data_1_2021_05", template.getTableName(2021, 5));
+    }
+
+}
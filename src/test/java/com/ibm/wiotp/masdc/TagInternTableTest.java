@@ -0,0 +1,51 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class TagInternTableTest {
+
+    @Test
+    public void testGetPut() {
+        TagInternTable table = new TagInternTable();
+        assertNull(table.get(12));
+        TagInternTable.Entry entry = table.put(12, "area1/pump1/temp", "d1", "Pump", "temp");
+        assertSame(entry, table.get(12));
+        assertEquals("area1/pump1/temp", entry.getTagpath());
+        assertEquals("d1", entry.getDeviceId());
+        assertEquals("Pump", entry.getDeviceType());
+        assertEquals("temp", entry.getEvtName());
+        assertNull(table.get(13));
+
+        // tag interned again keeps the first entry
+        assertSame(entry, table.put(12, "area1/pump1/temp", "d2", "Pump", "temp"));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testGrow() {
+        TagInternTable table = new TagInternTable();
+        for (long id = 0; id < 5000; id++) {
+            table.put(id * 7, "tag" + id, "d" + id, "Pump", "tag" + id);
+        }
+        assertEquals(5000, table.size());
+        for (long id = 0; id < 5000; id++) {
+            assertEquals("d" + id, table.get(id * 7).getDeviceId());
+        }
+        assertNull(table.get(1));
+        assertNull(table.get(-7));
+    }
+
+}
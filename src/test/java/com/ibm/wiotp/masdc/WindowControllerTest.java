@@ -0,0 +1,46 @@
+/*
+ *  Copyright (c) 2021 IBM Corporation and other Contributors.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.ibm.wiotp.masdc;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class WindowControllerTest {
+
+    @Test
+    public void testDisabled() {
+        WindowController wc = new WindowController(0, 1000, 60, 86400);
+        assertEquals(1800, wc.getNextWindowSecs(1800, 1000000));
+    }
+
+    @Test
+    public void testSparseDataGrowsWindow() {
+        WindowController wc = new WindowController(1, 1000, 60, 86400);
+        assertEquals(3600, wc.getNextWindowSecs(1800, 0));
+        assertEquals(3600, wc.getNextWindowSecs(1800, 10));
+        assertEquals(86400, wc.getNextWindowSecs(86400, 0));
+    }
+
+    @Test
+    public void testDenseDataShrinksWindow() {
+        WindowController wc = new WindowController(1, 1000, 60, 86400);
+        assertEquals(900, wc.getNextWindowSecs(1800, 1000000));
+        assertEquals(60, wc.getNextWindowSecs(100, 1000000));
+    }
+
+    @Test
+    public void testTargetRows() {
+        WindowController wc = new WindowController(1, 1000, 60, 86400);
+        assertEquals(1200, wc.getNextWindowSecs(1800, 1500));
+        assertEquals(1800, wc.getNextWindowSecs(1800, 1000));
+    }
+
+}